@@ -1,6 +1,7 @@
 package com.qcadoo.mes.basic;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.mes.basic.constants.ShiftFields;
 import com.qcadoo.mes.basic.constants.ShiftTimetableExceptionFields;
@@ -9,13 +10,16 @@ import com.qcadoo.mes.basic.shift.Shift;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.Entity;
 import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 public class ShiftExceptionService {
@@ -34,7 +38,30 @@ public class ShiftExceptionService {
             exceptions = timetableExceptionService.findFor(productionLine, shiftEntity, dateOfDay);
         }
 
-        Shift shiftForDay = new Shift(shiftEntity, new DateTime(dateOfDay), false);
+        return manageExceptions(shiftWorkDateTime, exceptions, shift, dateOfDay, removeFreeTimeException);
+    }
+
+    /**
+     * Loads timetable exceptions of the production line for each shift once for the whole period (open-ended when dateTo is
+     * null), to be filtered day by day by {@link #getShiftWorkDateTimes(Entity, Shift, DateTime, Map, boolean)}.
+     */
+    public Map<Long, List<Entity>> findExceptionsForPeriod(final Entity productionLine, final List<Shift> shifts,
+            final Date dateFrom, final Date dateTo) {
+        Map<Long, List<Entity>> shiftsExceptions = Maps.newHashMap();
+
+        if (Objects.nonNull(productionLine)) {
+            for (Shift shift : shifts) {
+                shiftsExceptions.put(shift.getId(),
+                        timetableExceptionService.findForPeriod(productionLine, shift.getEntity(), dateFrom, dateTo));
+            }
+        }
+
+        return shiftsExceptions;
+    }
+
+    private List<DateTimeRange> manageExceptions(List<DateTimeRange> shiftWorkDateTime, final List<Entity> exceptions,
+            final Shift shift, final Date dateOfDay, final boolean removeFreeTimeException) {
+        Shift shiftForDay = new Shift(shift.getEntity(), new DateTime(dateOfDay), false);
 
         for (Entity exception : exceptions) {
             if (removeFreeTimeException && TimetableExceptionType.FREE_TIME.getStringValue()
@@ -53,6 +80,27 @@ public class ShiftExceptionService {
 
     public List<DateTimeRange> getShiftWorkDateTimes(final Entity productionLine, final Shift shift, DateTime dateOfDay,
             final boolean removeFreeTimeException) {
+        List<DateTimeRange> shiftWorkDateTime = getShiftWorkDateTimes(shift, dateOfDay);
+
+        shiftWorkDateTime = manageExceptions(shiftWorkDateTime, productionLine, shift, dateOfDay.toDate(),
+                removeFreeTimeException);
+
+        return shiftWorkDateTime;
+    }
+
+    public List<DateTimeRange> getShiftWorkDateTimes(final Entity productionLine, final Shift shift, DateTime dateOfDay,
+            final Map<Long, List<Entity>> shiftsExceptions, final boolean removeFreeTimeException) {
+        List<Entity> shiftExceptions = shiftsExceptions.get(shift.getId());
+
+        if (Objects.isNull(productionLine) || Objects.isNull(shiftExceptions)) {
+            return getShiftWorkDateTimes(productionLine, shift, dateOfDay, removeFreeTimeException);
+        }
+
+        return manageExceptions(getShiftWorkDateTimes(shift, dateOfDay), filterExceptionsForDay(shiftExceptions, dateOfDay),
+                shift, dateOfDay.toDate(), removeFreeTimeException);
+    }
+
+    private List<DateTimeRange> getShiftWorkDateTimes(final Shift shift, final DateTime dateOfDay) {
         List<TimeRange> shiftWorkTime = Lists.newArrayList();
         List<DateTimeRange> shiftWorkDateTime = Lists.newArrayList();
         if (shift.worksAt(dateOfDay.dayOfWeek().get())) {
@@ -62,12 +110,18 @@ public class ShiftExceptionService {
             shiftWorkDateTime.add(new DateTimeRange(dateOfDay, range));
         }
 
-        shiftWorkDateTime = manageExceptions(shiftWorkDateTime, productionLine, shift, dateOfDay.toDate(),
-                removeFreeTimeException);
-
         return shiftWorkDateTime;
     }
 
+    private List<Entity> filterExceptionsForDay(final List<Entity> exceptions, final DateTime dateOfDay) {
+        LocalDate day = dateOfDay.toLocalDate();
+
+        return exceptions.stream()
+                .filter(exception -> !new LocalDate(exception.getDateField(ShiftTimetableExceptionFields.FROM_DATE)).isAfter(day)
+                        && !new LocalDate(exception.getDateField(ShiftTimetableExceptionFields.TO_DATE)).isBefore(day))
+                .collect(Collectors.toList());
+    }
+
     private List<DateTimeRange> removeFreeTimeException(final List<DateTimeRange> shiftWorkDateTime, final Entity exception,
             final Shift shift) {
         Optional<DateTimeRange> exceptionRange = getExceptionRange(exception, shift, false);
@@ -343,7 +343,7 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public Date findDateToForProductionLine(final Date dateFrom, final long seconds, final Entity productionLine) {
-        if (getShiftDataDefinition().find().list().getTotalNumberOfEntities() == 0) {
+        if (!hasShifts()) {
             return Date.from(dateFrom.toInstant().plusSeconds(seconds));
         }
 
@@ -353,6 +353,8 @@ public class ShiftsServiceImpl implements ShiftsService {
         DateTime dateOfDay = new DateTime(dateFrom);
         dateOfDay = dateOfDay.minusDays(1);
         dateOfDay = dateOfDay.toLocalDate().toDateTimeAtStartOfDay();
+        Map<Long, List<Entity>> shiftsExceptions = shiftExceptionService.findExceptionsForPeriod(productionLine, shifts,
+                dateOfDay.toDate(), null);
         long leftMilliseconds = seconds * MILLS;
         int loopCount = 0;
         while (leftMilliseconds > 0L) {
@@ -360,7 +362,8 @@ public class ShiftsServiceImpl implements ShiftsService {
                 return Date.from(dateFrom.toInstant().plusSeconds(seconds));
             }
             for (Shift shift : shifts) {
-                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay, true)) {
+                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay,
+                        shiftsExceptions, true)) {
                     if (dateFrom.after(dateOfDay.toDate())) {
                         range = range.trimBefore(dateFromDT);
                     }
@@ -382,13 +385,15 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public long getTotalAvailableTimeForProductionLine(final Date dateFrom, final Date dateTo, final Entity productionLine) {
-        if (getShiftDataDefinition().find().list().getTotalNumberOfEntities() == 0) {
+        if (!hasShifts()) {
             return (dateTo.getTime() - dateFrom.getTime()) / 1000;
         }
 
         long totalAvailableTime = 0;
 
         List<Shift> shifts = findAll(productionLine);
+        Map<Long, List<Entity>> shiftsExceptions = shiftExceptionService.findExceptionsForPeriod(productionLine, shifts,
+                dateFrom, dateTo);
         DateTime dateOfDay = new DateTime(dateFrom);
         int loopCount = 0;
         while (!dateOfDay.isAfter(new DateTime(dateTo))) {
@@ -396,7 +401,8 @@ public class ShiftsServiceImpl implements ShiftsService {
                 return (dateTo.getTime() - dateFrom.getTime()) / 1000;
             }
             for (Shift shift : shifts) {
-                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay, false)) {
+                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay,
+                        shiftsExceptions, false)) {
                     totalAvailableTime += range.durationMillis();
                 }
             }
@@ -581,6 +587,10 @@ public class ShiftsServiceImpl implements ShiftsService {
         return shifts.stream().sorted(Comparator.comparing(Entity::getId)).map(Shift::new).collect(Collectors.toList());
     }
 
+    private boolean hasShifts() {
+        return !getShiftDataDefinition().find().setMaxResults(1).list().getEntities().isEmpty();
+    }
+
     private DataDefinition getShiftDataDefinition() {
         return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_SHIFT);
     }
@@ -29,6 +29,31 @@ class TimetableExceptionService {
         return findFor(Lists.newArrayList(productionLine.getId()), Lists.newArrayList(shift.getId()), date, type);
     }
 
+    List<Entity> findForPeriod(final Entity productionLine, final Entity shift, final Date dateFrom, final Date dateTo) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT timetableException FROM #basic_shiftTimetableException timetableException");
+        query.append(" JOIN timetableException.productionLines productionLine");
+        query.append(" JOIN timetableException.shifts shift");
+        query.append(" WHERE productionLine.id = :productionLine");
+        query.append(" AND shift.id = :shift");
+        query.append(" AND to_char(timetableException.toDate,'yyyy-MM-dd') >= :dateFrom");
+
+        if (dateTo != null) {
+            query.append(" AND to_char(timetableException.fromDate,'yyyy-MM-dd') <= :dateTo");
+        }
+
+        SearchQueryBuilder searchQueryBuilder = getShiftTimetableExceptionDD().find(query.toString())
+                .setLong("productionLine", productionLine.getId()).setLong("shift", shift.getId())
+                .setParameter("dateFrom", DateUtils.toDateString(dateFrom));
+
+        if (dateTo != null) {
+            searchQueryBuilder.setParameter("dateTo", DateUtils.toDateString(dateTo));
+        }
+
+        return searchQueryBuilder.list().getEntities();
+    }
+
     private List<Entity> findFor(final List<Long> productionLineIds, final List<Long> shiftIds, final Date date,
             final String type) {
         List<Entity> shiftTimetableExceptions = Lists.newArrayList();
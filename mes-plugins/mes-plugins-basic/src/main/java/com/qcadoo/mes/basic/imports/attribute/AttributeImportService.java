@@ -1,5 +1,6 @@
 package com.qcadoo.mes.basic.imports.attribute;
 
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
@@ -10,6 +11,7 @@ import com.qcadoo.mes.basic.constants.AttributeValueType;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductAttributeValueFields;
 import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.file.FileService;
@@ -23,6 +25,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
@@ -40,6 +44,8 @@ public class AttributeImportService {
 
     private static final Integer HEADER_ROW_NUMBER = 0;
 
+    private static final int L_BATCH_SIZE = 1000;
+
     public static final String L_PRODUCT = "product";
 
     public static final String L_RESOURCE = "resource";
@@ -114,9 +120,12 @@ public class AttributeImportService {
     @Transactional
     private void storeProductAttributes(AttributeImportContainer container, List<AttributePosition> attributes) {
         Map<String, Entity> attributeEntitiesByNumber = getAttributeEntityByNumberForProduct(attributes);
+        Map<String, Entity> productsByNumber = getEntitiesByNumber(
+                dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT), ProductFields.NUMBER,
+                container.getAtribiutesValuesByType().keySet());
+        Map<Long, Map<String, Optional<Entity>>> attributeValues = Maps.newHashMap();
         for (Map.Entry<String, Map<String, List<String>>> entry : container.getAtribiutesValuesByType().entrySet()) {
-            Entity product = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).find()
-                    .add(SearchRestrictions.eq(ProductFields.NUMBER, entry.getKey())).setMaxResults(1).uniqueResult();
+            Entity product = productsByNumber.get(entry.getKey());
             if (Objects.isNull(product)) {
                 container.getErrors().add(
                         translationService.translate("basic.attributeImport.productNotExists", LocaleContextHolder.getLocale(),
@@ -140,7 +149,7 @@ public class AttributeImportService {
                     }
 
                     if (AttributeDataType.CALCULATED.getStringValue().equals(attribute.getStringField(AttributeFields.DATA_TYPE))) {
-                        Entity attributeValue = getAttributeValue(value, attribute);
+                        Entity attributeValue = getAttributeValue(value, attribute, attributeValues);
                         if (Objects.isNull(attributeValue)) {
                             container.getErrors().add(
                                     translationService.translate("basic.attributeImport.attributeValueNotExists",
@@ -178,9 +187,11 @@ public class AttributeImportService {
     @Transactional
     private void storeResourceAttributes(AttributeImportContainer container, List<AttributePosition> attributes) {
         Map<String, Entity> attributeEntitiesByNumber = getAttributeEntityByNumberForResource(attributes);
+        Map<String, Entity> resourcesByNumber = getEntitiesByNumber(dataDefinitionService.get("materialFlowResources", "resource"),
+                "number", container.getAtribiutesValuesByType().keySet());
+        Map<Long, Map<String, Optional<Entity>>> attributeValues = Maps.newHashMap();
         for (Map.Entry<String, Map<String, List<String>>> entry : container.getAtribiutesValuesByType().entrySet()) {
-            Entity resource = dataDefinitionService.get("materialFlowResources", "resource").find()
-                    .add(SearchRestrictions.eq("number", entry.getKey())).setMaxResults(1).uniqueResult();
+            Entity resource = resourcesByNumber.get(entry.getKey());
             if (Objects.isNull(resource)) {
                 container.getErrors().add(
                         translationService.translate("basic.attributeImport.resourceNotExists", LocaleContextHolder.getLocale(),
@@ -202,7 +213,7 @@ public class AttributeImportService {
                         value = valueAttr.replace(".", ",");
                     }
                     if (AttributeDataType.CALCULATED.getStringValue().equals(attribute.getStringField(AttributeFields.DATA_TYPE))) {
-                        Entity attributeValue = getAttributeValue(value, attribute);
+                        Entity attributeValue = getAttributeValue(value, attribute, attributeValues);
                         if (Objects.isNull(attributeValue)) {
                             container.getErrors().add(
                                     translationService.translate("basic.attributeImport.attributeValueNotExists",
@@ -271,6 +282,25 @@ public class AttributeImportService {
         }
     }
 
+    private Map<String, Entity> getEntitiesByNumber(final DataDefinition dataDefinition, final String numberFieldName,
+            final Set<String> numbers) {
+        Map<String, Entity> entitiesByNumber = Maps.newHashMap();
+
+        for (List<String> numbersPartition : Iterables.partition(numbers, L_BATCH_SIZE)) {
+            dataDefinition.find().add(SearchRestrictions.in(numberFieldName, numbersPartition)).list().getEntities()
+                    .forEach(entity -> entitiesByNumber.putIfAbsent(entity.getStringField(numberFieldName), entity));
+        }
+
+        return entitiesByNumber;
+    }
+
+    private Entity getAttributeValue(final String value, final Entity attribute,
+            final Map<Long, Map<String, Optional<Entity>>> attributeValues) {
+        return attributeValues.computeIfAbsent(attribute.getId(), attributeId -> Maps.newHashMap())
+                .computeIfAbsent(value, attributeValue -> Optional.ofNullable(getAttributeValue(attributeValue, attribute)))
+                .orElse(null);
+    }
+
     private Entity getAttributeValue(String valEntry, Entity attribute) {
         return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.ATTRIBUTE_VALUE).find()
                 .add(SearchRestrictions.belongsTo(AttributeValueFields.ATTRIBUTE, attribute))
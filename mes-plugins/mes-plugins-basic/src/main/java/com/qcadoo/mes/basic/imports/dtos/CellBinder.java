@@ -23,15 +23,11 @@
  */
 package com.qcadoo.mes.basic.imports.dtos;
 
-import java.util.Locale;
 import java.util.Objects;
 import java.util.function.Consumer;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.springframework.context.i18n.LocaleContextHolder;
 
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
@@ -96,25 +92,19 @@ public abstract class CellBinder {
         return new OptionalCellBinder(fieldName, dependentFieldName, cellParser);
     }
 
-    public abstract void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor);
-
-    public abstract void bind(final Cell cell, final Cell dependentCell, final Entity entity,
-            final CellErrorsAccessor errorsAccessor);
-
     public abstract void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor);
 
-    private static String formatCell(final Cell cell) {
-        Locale locale = LocaleContextHolder.getLocale();
-
-        final DataFormatter dataFormatter = new DataFormatter(Objects.isNull(locale) ? Locale.getDefault() : locale);
-
-        return dataFormatter.formatCellValue(cell).trim();
-    }
+    public abstract void bind(final String cellValue, final String dependentCellValue, final Entity entity,
+            final CellErrorsAccessor errorsAccessor);
 
     private static String formatCell(final String cellValue) {
         return cellValue.trim();
     }
 
+    private static String formatDependentCell(final String dependentCellValue) {
+        return Objects.isNull(dependentCellValue) ? StringUtils.EMPTY : formatCell(dependentCellValue);
+    }
+
     @Override
     public String toString() {
         return ToStringBuilder.reflectionToString(this);
@@ -144,32 +134,22 @@ public abstract class CellBinder {
         }
 
         @Override
-        public void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor) {
-            if (Objects.isNull(cell)) {
+        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
+            if (StringUtils.isEmpty(cellValue)) {
                 errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING);
             } else {
-                getCellParser().parse(formatCell(cell), null, errorsAccessor,
+                getCellParser().parse(formatCell(cellValue), null, errorsAccessor,
                         fieldValue -> entity.setField(getFieldName(), fieldValue));
             }
         }
 
         @Override
-        public void bind(final Cell cell, final Cell dependentCell, final Entity entity,
+        public void bind(final String cellValue, final String dependentCellValue, final Entity entity,
                 final CellErrorsAccessor errorsAccessor) {
-            if (Objects.isNull(cell)) {
-                errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING);
-            } else {
-                getCellParser().parse(formatCell(cell), formatCell(dependentCell), errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
-            }
-        }
-
-        @Override
-        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
             if (StringUtils.isEmpty(cellValue)) {
                 errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING);
             } else {
-                getCellParser().parse(formatCell(cellValue), null, errorsAccessor,
+                getCellParser().parse(formatCell(cellValue), formatDependentCell(dependentCellValue), errorsAccessor,
                         fieldValue -> entity.setField(getFieldName(), fieldValue));
             }
         }
@@ -190,32 +170,22 @@ public abstract class CellBinder {
         }
 
         @Override
-        public void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor) {
-            if (Objects.isNull(cell)) {
+        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
+            if (StringUtils.isEmpty(cellValue)) {
                 setDefaultValue(entity, errorsAccessor);
             } else {
-                getCellParser().parse(formatCell(cell), null, errorsAccessor,
+                getCellParser().parse(formatCell(cellValue), null, errorsAccessor,
                         fieldValue -> entity.setField(getFieldName(), fieldValue));
             }
         }
 
         @Override
-        public void bind(final Cell cell, final Cell dependentCell, final Entity entity,
+        public void bind(final String cellValue, final String dependentCellValue, final Entity entity,
                 final CellErrorsAccessor errorsAccessor) {
-            if (Objects.isNull(cell)) {
-                setDefaultValue(entity, errorsAccessor);
-            } else {
-                getCellParser().parse(formatCell(cell), formatCell(dependentCell), errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
-            }
-        }
-
-        @Override
-        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
             if (StringUtils.isEmpty(cellValue)) {
                 setDefaultValue(entity, errorsAccessor);
             } else {
-                getCellParser().parse(formatCell(cellValue), null, errorsAccessor,
+                getCellParser().parse(formatCell(cellValue), formatDependentCell(dependentCellValue), errorsAccessor,
                         fieldValue -> entity.setField(getFieldName(), fieldValue));
             }
         }
@@ -27,8 +27,6 @@ import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 
-import org.apache.poi.ss.usermodel.Cell;
-
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.imports.dtos.CellBinder;
 import com.qcadoo.mes.basic.imports.dtos.CellBinderRegistry;
@@ -68,18 +66,6 @@ public class RowProcessorHelper {
         return empty;
     }
 
-    public void append(final Cell cell) {
-        assureNotProcessedYet();
-
-        if (Objects.nonNull(cell)) {
-            empty = false;
-        }
-
-        final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
-
-        binder.bind(cell, entity, errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
-    }
-
     public void append(final String cellValue) {
         assureNotProcessedYet();
 
@@ -92,16 +78,16 @@ public class RowProcessorHelper {
         binder.bind(cellValue, entity, errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
     }
 
-    public void append(Cell cell, Cell dependentCell) {
+    public void append(final String cellValue, final String dependentCellValue) {
         assureNotProcessedYet();
 
-        if (Objects.nonNull(cell)) {
+        if (Objects.nonNull(cellValue)) {
             empty = false;
         }
 
         final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
 
-        binder.bind(cell, dependentCell, entity,
+        binder.bind(cellValue, dependentCellValue, entity,
                 errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
     }
 
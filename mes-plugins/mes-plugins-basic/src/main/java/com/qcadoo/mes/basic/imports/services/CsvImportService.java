@@ -26,7 +26,6 @@ package com.qcadoo.mes.basic.imports.services;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -58,11 +57,11 @@ public class CsvImportService extends ImportService {
         CSVParser parser = new CSVParserBuilder().withSeparator(';').build();
         CSVReader csvReader = new CSVReaderBuilder(new InputStreamReader(fis)).withCSVParser(parser).withSkipLines(1).build();
 
-        List<String[]> rows = csvReader.readAll();
-
         int rowIndex = 0;
 
-        for (String[] row : rows) {
+        String[] row;
+
+        while (Objects.nonNull(row = csvReader.readNext())) {
             Entity entity = createEntity(pluginIdentifier, modelName);
 
             if (Objects.nonNull(belongsTo) && Objects.nonNull(belongsToName)) {
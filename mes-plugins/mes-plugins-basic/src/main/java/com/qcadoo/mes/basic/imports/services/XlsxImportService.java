@@ -31,15 +31,28 @@ import com.qcadoo.mes.basic.imports.helpers.RowProcessorHelper;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchCriterion;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
+import javax.xml.parsers.ParserConfigurationException;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.function.Function;
 
@@ -53,56 +66,92 @@ public class XlsxImportService extends ImportService {
             final Function<Entity, Boolean> checkOnUpdate) throws IOException {
         ImportStatus importStatus = new ImportStatus();
 
-        XSSFWorkbook workbook = new XSSFWorkbook(fis);
-        XSSFSheet sheet = workbook.getSheetAt(0);
+        RowHandler rowHandler = new RowHandler(cellBinderRegistry,
+                (rowIndex, row) -> processRow(row, rowIndex, importStatus, cellBinderRegistry, pluginIdentifier, modelName,
+                        belongsTo, belongsToName, shouldUpdate, criteriaSupplier, checkOnUpdate));
 
-        for (int rowIndex = 1; rowIndex <= sheet.getLastRowNum(); rowIndex++) {
-            Row row = sheet.getRow(rowIndex);
+        readFirstSheet(fis, rowHandler);
 
-            if (Objects.isNull(row)) {
-                break;
-            }
+        if (rollbackOnError && importStatus.hasErrors()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
 
-            Entity entity = createEntity(pluginIdentifier, modelName);
+        return importStatus;
+    }
 
-            if (Objects.nonNull(belongsTo) && Objects.nonNull(belongsToName)) {
-                entity.setField(belongsToName, belongsTo);
-            }
+    private void readFirstSheet(final InputStream inputStream, final XSSFSheetXMLHandler.SheetContentsHandler rowHandler)
+            throws IOException {
+        OPCPackage opcPackage = null;
 
-            RowProcessorHelper rowProcessorHelper = new RowProcessorHelper(entity, cellBinderRegistry, importStatus, rowIndex);
-
-            for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
-                CellBinder cell = cellBinderRegistry.getCellBinder(columnIndex);
-                String dependentFieldName = cell.getDependentFieldName();
-                if (StringUtils.isEmpty(dependentFieldName)) {
-                    rowProcessorHelper.append(row.getCell(columnIndex, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL));
-                } else {
-                    int dependentIndex = getDependentIndex(dependentFieldName, cellBinderRegistry);
-                    rowProcessorHelper.append(row.getCell(columnIndex, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL),
-                            row.getCell(dependentIndex, Row.MissingCellPolicy.RETURN_BLANK_AS_NULL));
-                }
-            }
+        try {
+            opcPackage = OPCPackage.open(inputStream);
 
-            if (rowProcessorHelper.isEmpty()) {
-                break;
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            ReadOnlySharedStringsTable sharedStringsTable = new ReadOnlySharedStringsTable(opcPackage);
+            XSSFReader.SheetIterator sheetIterator = (XSSFReader.SheetIterator) xssfReader.getSheetsData();
+
+            if (!sheetIterator.hasNext()) {
+                return;
             }
 
-            if (shouldUpdate && !Objects.isNull(criteriaSupplier)) {
-                Entity entityToUpdate = getEntity(pluginIdentifier, modelName, criteriaSupplier.apply(entity));
+            Locale locale = LocaleContextHolder.getLocale();
+            DataFormatter dataFormatter = new DataFormatter(Objects.isNull(locale) ? Locale.getDefault() : locale);
+
+            try (InputStream sheetInputStream = sheetIterator.next()) {
+                XMLReader xmlReader = SAXHelper.newXMLReader();
 
-                rowProcessorHelper.update(entityToUpdate, checkOnUpdate);
+                // formulas are read as text, the same way DataFormatter formats formula cells without an evaluator
+                xmlReader.setContentHandler(new XSSFSheetXMLHandler(xssfReader.getStylesTable(), sharedStringsTable, rowHandler,
+                        dataFormatter, true));
+                xmlReader.parse(new InputSource(sheetInputStream));
             }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IllegalStateException("Unable to read xlsx file", e);
+        } finally {
+            if (Objects.nonNull(opcPackage)) {
+                opcPackage.revert();
+            }
+        }
+    }
 
-            validateEntity(entity, entity.getDataDefinition());
+    private boolean processRow(final String[] row, final int rowIndex, final ImportStatus importStatus,
+            final CellBinderRegistry cellBinderRegistry, final String pluginIdentifier, final String modelName,
+            final Entity belongsTo, final String belongsToName, final Boolean shouldUpdate,
+            final Function<Entity, SearchCriterion> criteriaSupplier, final Function<Entity, Boolean> checkOnUpdate) {
+        Entity entity = createEntity(pluginIdentifier, modelName);
 
-            rowProcessorHelper.process();
+        if (Objects.nonNull(belongsTo) && Objects.nonNull(belongsToName)) {
+            entity.setField(belongsToName, belongsTo);
         }
 
-        if (rollbackOnError && importStatus.hasErrors()) {
-            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        RowProcessorHelper rowProcessorHelper = new RowProcessorHelper(entity, cellBinderRegistry, importStatus, rowIndex);
+
+        for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
+            CellBinder cell = cellBinderRegistry.getCellBinder(columnIndex);
+            String dependentFieldName = cell.getDependentFieldName();
+            if (StringUtils.isEmpty(dependentFieldName)) {
+                rowProcessorHelper.append(row[columnIndex]);
+            } else {
+                int dependentIndex = getDependentIndex(dependentFieldName, cellBinderRegistry);
+                rowProcessorHelper.append(row[columnIndex], dependentIndex < 0 ? null : row[dependentIndex]);
+            }
         }
 
-        return importStatus;
+        if (rowProcessorHelper.isEmpty()) {
+            return false;
+        }
+
+        if (shouldUpdate && !Objects.isNull(criteriaSupplier)) {
+            Entity entityToUpdate = getEntity(pluginIdentifier, modelName, criteriaSupplier.apply(entity));
+
+            rowProcessorHelper.update(entityToUpdate, checkOnUpdate);
+        }
+
+        validateEntity(entity, entity.getDataDefinition());
+
+        rowProcessorHelper.process();
+
+        return true;
     }
 
     private int getDependentIndex(final String dependentFieldName, final CellBinderRegistry cellBinderRegistry) {
@@ -118,4 +167,77 @@ public class XlsxImportService extends ImportService {
         return Files.getFileExtension(filePath).equalsIgnoreCase(L_XLSX);
     }
 
+    @FunctionalInterface
+    private interface RowConsumer {
+
+        boolean accept(final int rowIndex, final String[] row);
+
+    }
+
+    /**
+     * Collects formatted cell values of the sheet row by row, so only the current row is kept in memory. Header row is skipped,
+     * reading stops at the first missing or empty row, the same way as it was done for the workbook loaded as a whole. Blank
+     * cells are not reported by the parser and stay null. Cells holding an empty string are passed on as a single space, so
+     * binders still parse them (trimmed to an empty value) instead of treating them as missing, like cells of the workbook did.
+     */
+    private static class RowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private static final String L_EMPTY_STRING_CELL_VALUE = StringUtils.SPACE;
+
+        private final int size;
+
+        private final RowConsumer rowConsumer;
+
+        private String[] row;
+
+        private int lastRowIndex = 0;
+
+        private boolean finished = false;
+
+        RowHandler(final CellBinderRegistry cellBinderRegistry, final RowConsumer rowConsumer) {
+            this.size = cellBinderRegistry.getSize();
+            this.rowConsumer = rowConsumer;
+        }
+
+        @Override
+        public void startRow(final int rowIndex) {
+            if (!finished && (rowIndex > lastRowIndex + 1)) {
+                finished = true;
+            }
+
+            row = new String[size];
+        }
+
+        @Override
+        public void endRow(final int rowIndex) {
+            if (finished || (rowIndex == 0)) {
+                return;
+            }
+
+            lastRowIndex = rowIndex;
+
+            if (!rowConsumer.accept(rowIndex, row)) {
+                finished = true;
+            }
+        }
+
+        @Override
+        public void cell(final String cellReference, final String formattedValue, final XSSFComment comment) {
+            if (finished || Objects.isNull(cellReference)) {
+                return;
+            }
+
+            int columnIndex = new CellReference(cellReference).getCol();
+
+            if (columnIndex < size) {
+                row[columnIndex] = StringUtils.EMPTY.equals(formattedValue) ? L_EMPTY_STRING_CELL_VALUE : formattedValue;
+            }
+        }
+
+        @Override
+        public void headerFooter(final String text, final boolean isHeader, final String tagName) {
+        }
+
+    }
+
 }
@@ -0,0 +1,160 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.imports.dtos.CellBinder;
+import com.qcadoo.mes.basic.imports.dtos.CellBinderRegistry;
+import com.qcadoo.mes.basic.imports.dtos.ImportError;
+import com.qcadoo.mes.basic.imports.dtos.ImportStatus;
+import com.qcadoo.mes.basic.imports.parsers.BigDecimalCellParser;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+
+public class CsvImportServiceTest {
+
+    private static final String L_NUMBER = "number";
+
+    private static final String L_QUANTITY = "quantity";
+
+    private static final String L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING = "qcadooView.validate.field.error.missing";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CsvImportService csvImportService;
+
+    private CellBinderRegistry cellBinderRegistry;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition productDD;
+
+    @Mock
+    private Entity product;
+
+    @Before
+    public void init() {
+        csvImportService = new CsvImportService();
+
+        MockitoAnnotations.initMocks(this);
+
+        ReflectionTestUtils.setField(csvImportService, "dataDefinitionService", dataDefinitionService);
+
+        given(dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT)).willReturn(productDD);
+        given(productDD.create()).willReturn(product);
+        given(productDD.save(product)).willReturn(product);
+        given(product.getDataDefinition()).willReturn(productDD);
+        given(product.isValid()).willReturn(true);
+
+        cellBinderRegistry = new CellBinderRegistry();
+        cellBinderRegistry.setCellBinder(CellBinder.required(L_NUMBER));
+        cellBinderRegistry.setCellBinder(CellBinder.optional(L_QUANTITY, new BigDecimalCellParser()));
+
+        LocaleContextHolder.setLocale(Locale.ENGLISH);
+    }
+
+    @After
+    public void cleanUp() {
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    @Test
+    public final void shouldSetNullForEmptyOptionalNumericColumn() throws IOException {
+        // given
+        File file = createCsvFile("number;quantity\nP1;\n");
+
+        // when
+        ImportStatus importStatus = importFile(file);
+
+        // then
+        assertFalse(importStatus.hasErrors());
+        assertEquals(1, importStatus.getRowsProcessed());
+
+        verify(product).setField(L_NUMBER, "P1");
+        verify(product).setField(L_QUANTITY, null);
+        verify(productDD).save(product);
+    }
+
+    @Test
+    public final void shouldReportMissingValueForEmptyRequiredColumn() throws IOException {
+        // given
+        File file = createCsvFile("number;quantity\n;5\n");
+
+        // when
+        ImportStatus importStatus = importFile(file);
+
+        // then
+        assertTrue(importStatus.hasErrors());
+        assertEquals(1, importStatus.getErrorsSize());
+        assertTrue(importStatus.getErrors().contains(new ImportError(0, L_NUMBER, L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING)));
+
+        verify(product, never()).setField(L_NUMBER, "");
+        verify(productDD, never()).save(any(Entity.class));
+    }
+
+    private File createCsvFile(final String content) throws IOException {
+        File file = temporaryFolder.newFile("import.csv");
+
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        return file;
+    }
+
+    private ImportStatus importFile(final File file) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            return csvImportService.importFile(fis, cellBinderRegistry, false, BasicConstants.PLUGIN_IDENTIFIER,
+                    BasicConstants.MODEL_PRODUCT, null, null, false, null, null);
+        }
+    }
+
+}
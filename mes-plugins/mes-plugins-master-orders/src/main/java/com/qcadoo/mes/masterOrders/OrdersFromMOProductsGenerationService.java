@@ -42,7 +42,6 @@ import com.qcadoo.model.api.DictionaryService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.SearchOrders;
-import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.constants.DictionaryItemFields;
 import com.qcadoo.plugin.api.PluginUtils;
@@ -55,6 +54,8 @@ public class OrdersFromMOProductsGenerationService {
 
     private static final String L_CREATE_COLLECTIVE_ORDERS = "createCollectiveOrders";
 
+    private static final String L_ID = "id";
+
     private static final String L_MASTER_ORDER_POSITION_STATUS = "masterOrderPositionStatus";
 
     private static final List<String> L_TECHNOLOGY_FIELD_NAMES = Lists.newArrayList("registerQuantityInProduct",
@@ -123,25 +124,26 @@ public class OrdersFromMOProductsGenerationService {
             }
         });
 
+        Map<Long, Entity> masterOrderPositionDtos = getMasterOrderPositionDtos(masterOrderProductsEntities);
+
         boolean createCollectiveOrders = parameterService.getParameter().getBooleanField(L_CREATE_COLLECTIVE_ORDERS);
         if (createCollectiveOrders) {
             Map<ProductTechnologyKey, List<Entity>> groupedMap = groupPositions(masterOrderProductsEntities);
 
             for (Map.Entry<ProductTechnologyKey, List<Entity>> entry : groupedMap.entrySet()) {
-                String hql = "SELECT SUM(mop.quantityRemainingToOrderWithoutStock) AS quantityRemainingToOrder FROM #masterOrders_masterOrderPositionDto mop "
-                        + " WHERE mop.id IN (:ids)";
-
-                SearchQueryBuilder scb = dataDefinitionService
-                        .get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO)
-                        .find(hql);
+                BigDecimal quantityRemainingToOrder = null;
 
-                scb.setParameterList("ids", entry.getValue().stream().map(Entity::getId).collect(Collectors.toList()));
+                for (Entity mop : entry.getValue()) {
+                    BigDecimal positionQuantityRemainingToOrder = masterOrderPositionDtos.get(mop.getId())
+                            .getDecimalField(MasterOrderPositionDtoFields.QUANTITY_REMAINING_TO_ORDER_WITHOUT_STOCK);
 
-                Entity quantityRemainingToOrderResult = scb.setMaxResults(1).uniqueResult();
+                    if (Objects.nonNull(positionQuantityRemainingToOrder)) {
+                        quantityRemainingToOrder = Objects.isNull(quantityRemainingToOrder) ? positionQuantityRemainingToOrder
+                                : quantityRemainingToOrder.add(positionQuantityRemainingToOrder, numberService.getMathContext());
+                    }
+                }
 
-                Entity positionDto = dataDefinitionService
-                        .get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO)
-                        .get(entry.getValue().get(0).getId());
+                Entity positionDto = masterOrderPositionDtos.get(entry.getValue().get(0).getId());
 
                 BigDecimal minStateQuantity = positionDto.getDecimalField(MasterOrderPositionDtoFields.WAREHOUSE_MINIMUM_STATE_QUANTITY);
 
@@ -149,19 +151,16 @@ public class OrdersFromMOProductsGenerationService {
                         .minStateQuantity(minStateQuantity)
                         .createCollectiveOrders(createCollectiveOrders).product(entry.getKey().getProduct())
                         .technology(entry.getKey().getTechnology()).groupedMasterOrderProduct(entry.getValue())
-                        .quantityRemainingToOrder(quantityRemainingToOrderResult.getDecimalField("quantityRemainingToOrder"))
+                        .quantityRemainingToOrder(quantityRemainingToOrder)
                         .build();
 
                 generateOrder(generatePPS, automaticPps, result, masterOrderProduct, start, finish);
             }
         } else {
             masterOrderProductsEntities.forEach(mop -> {
-                BigDecimal quantityRemainingToOrder = dataDefinitionService
-                        .get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO)
-                        .get(mop.getId()).getDecimalField(MasterOrderPositionDtoFields.QUANTITY_REMAINING_TO_ORDER_WITHOUT_STOCK);
-                Entity positionDto = dataDefinitionService
-                        .get(MasterOrdersConstants.PLUGIN_IDENTIFIER, MasterOrdersConstants.MODEL_MASTER_ORDER_POSITION_DTO)
-                        .get(mop.getId());
+                Entity positionDto = masterOrderPositionDtos.get(mop.getId());
+                BigDecimal quantityRemainingToOrder = positionDto
+                        .getDecimalField(MasterOrderPositionDtoFields.QUANTITY_REMAINING_TO_ORDER_WITHOUT_STOCK);
                 BigDecimal minStateQuantity = positionDto.getDecimalField(MasterOrderPositionDtoFields.WAREHOUSE_MINIMUM_STATE_QUANTITY);
 
                 MasterOrderProduct masterOrderProduct = MasterOrderProduct.newMasterOrderProduct()
@@ -182,6 +181,17 @@ public class OrdersFromMOProductsGenerationService {
         return result;
     }
 
+    private Map<Long, Entity> getMasterOrderPositionDtos(final List<Entity> masterOrderProductsEntities) {
+        if (masterOrderProductsEntities.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<Long> ids = masterOrderProductsEntities.stream().map(Entity::getId).collect(Collectors.toList());
+
+        return getMasterOrderProductDtoDD().find().add(SearchRestrictions.in(L_ID, ids)).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, positionDto -> positionDto));
+    }
+
     private Map<ProductTechnologyKey, List<Entity>> groupPositions(final List<Entity> masterOrderProductsEntities) {
         Map<ProductTechnologyKey, List<Entity>> groupedMap = Maps.newHashMap();
 
@@ -45,6 +45,8 @@ public class DocumentPositionService {
 
     public static final String ID = "id";
 
+    private static final String L_RESOURCE_NUMBER = "resourcenumber";
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -180,23 +182,20 @@ public class DocumentPositionService {
                 records);
     }
 
-    private void delete(final Long id) {
-        validator.validateBeforeDelete(id);
+    private void delete(final List<Long> ids) {
+        ids.forEach(validator::validateBeforeDelete);
+
+        Map<String, Object> params = Collections.singletonMap("ids", ids);
 
-        String deleteQuery = "DELETE FROM materialflowresources_positionattributevalue WHERE position_id = :positionId";
-        Map<String, Object> paramsDeleteAttribute = Maps.newHashMap();
-        paramsDeleteAttribute.put(POSITION_ID, id);
-        jdbcTemplate.update(deleteQuery, paramsDeleteAttribute);
+        jdbcTemplate.update("DELETE FROM materialflowresources_positionattributevalue WHERE position_id IN (:ids)", params);
 
-        Map<String, Object> params = Maps.newHashMap();
-        params.put(ID, id);
-        String queryForDocumentId = "SELECT document_id, product_id, resource_id, quantity FROM materialflowresources_position WHERE id = :id";
-        Map<String, Object> result = jdbcTemplate.queryForMap(queryForDocumentId, params);
+        String queryForPositions = "SELECT id, document_id, product_id, resource_id, quantity FROM materialflowresources_position WHERE id IN (:ids)";
+        Map<Long, List<Map<String, Object>>> positionsByDocument = jdbcTemplate.queryForList(queryForPositions, params).stream()
+                .collect(Collectors.groupingBy(position -> (Long) position.get("document_id")));
 
-        params.putAll(result);
+        positionsByDocument.forEach(reservationsService::deleteReservationsFromDocumentPositions);
 
-        reservationsService.deleteReservationFromDocumentPosition(params);
-        jdbcTemplate.update("DELETE FROM materialflowresources_position WHERE id = :id ", params);
+        jdbcTemplate.update("DELETE FROM materialflowresources_position WHERE id IN (:ids)", params);
     }
 
     public void create(final DocumentPositionDTO documentPositionVO) {
@@ -210,10 +209,10 @@ public class DocumentPositionService {
             params.remove(ID);
         }
 
+        params.put(L_RESOURCE_NUMBER, documentPositionVO.getResource());
+
         String keys = String.join(", ", params.keySet());
-        keys += ", resourcenumber";
         String values = params.keySet().stream().map(key -> ":" + key).collect(Collectors.joining(", "));
-        values += ", '" + documentPositionVO.getResource() + "'";
 
         String query = String.format("INSERT INTO materialflowresources_position (%s) VALUES (%s) RETURNING id", keys, values);
 
@@ -235,8 +234,9 @@ public class DocumentPositionService {
         }
         Map<String, Object> params = validator.validateAndTryMapBeforeUpdate(documentPositionVO);
 
+        params.put(L_RESOURCE_NUMBER, documentPositionVO.getResource());
+
         String set = params.keySet().stream().map(key -> key + "=:" + key).collect(Collectors.joining(", "));
-        set += ", resourcenumber = '" + documentPositionVO.getResource() + "'";
 
         String query = String.format("UPDATE materialflowresources_position SET %s WHERE id = :id ", set);
 
@@ -244,7 +244,6 @@ public class DocumentPositionService {
         jdbcTemplate.update(query, params);
         attributePositionService.createOrUpdateAttributePositionValues(false, documentPositionVO.getId(),
                 documentPositionVO.getAttrs());
-        updateDocumentPositionsNumbers(documentPositionVO.getDocument());
     }
 
     private List<StorageLocationDTO> getStorageLocations(String preparedQuery, String q, Map<String, Object> paramMap) {
@@ -374,31 +373,12 @@ public class DocumentPositionService {
     }
 
     public void updateDocumentPositionsNumbers(final Long documentId) {
-        String query = "SELECT p.*, p.document_id AS document, product.number AS product, product.unit, additionalcode.code AS additionalcode, palletnumber.number AS palletnumber, "
-                + "location.number AS storagelocationnumber\n" + "	FROM materialflowresources_position p\n"
-                + "	LEFT JOIN basic_product product ON (p.product_id = product.id)\n"
-                + "	LEFT JOIN basic_additionalcode additionalcode ON (p.additionalcode_id = additionalcode.id)\n"
-                + "	LEFT JOIN basic_palletnumber palletnumber ON (p.palletnumber_id = palletnumber.id)\n"
-                + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId ORDER BY p.id";
+        String query = "UPDATE materialflowresources_position p SET number = numbered.number "
+                + "FROM (SELECT id, row_number() OVER (ORDER BY id) AS number "
+                + "FROM materialflowresources_position WHERE document_id = :documentId) numbered "
+                + "WHERE p.id = numbered.id AND p.number IS DISTINCT FROM numbered.number";
 
-        List<DocumentPositionDTO> list = jdbcTemplate.query(query, Collections.singletonMap(DOCUMENT_ID, documentId),
-                new BeanPropertyRowMapper(DocumentPositionDTO.class));
-        int index = 1;
-
-        for (DocumentPositionDTO documentPositionDTO : list) {
-            documentPositionDTO.setNumber(index);
-
-            Map<String, Object> parameters = Maps.newHashMap();
-
-            parameters.put("number", documentPositionDTO.getNumber());
-            parameters.put(ID, documentPositionDTO.getId());
-
-            String _query = "UPDATE materialflowresources_position SET number = :number WHERE id = :id ";
-
-            jdbcTemplate.update(_query, parameters);
-
-            index++;
-        }
+        jdbcTemplate.update(query, Collections.singletonMap(DOCUMENT_ID, documentId));
     }
 
     public Long findDocumentByPosition(final Long positionId) {
@@ -699,9 +679,7 @@ public class DocumentPositionService {
 
         Long documentId = findDocumentByPosition(Long.valueOf(items.stream().findFirst().get()));
 
-        items.forEach(id -> {
-            delete(Long.valueOf(id));
-        });
+        delete(items.stream().map(Long::valueOf).collect(Collectors.toList()));
 
         updateDocumentPositionsNumbers(documentId);
     }
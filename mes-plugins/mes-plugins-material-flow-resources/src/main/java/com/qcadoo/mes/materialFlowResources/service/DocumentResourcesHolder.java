@@ -0,0 +1,175 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Holds resources of one warehouse for all products of a document, loaded with a single query. Resources changed or deleted
+ * while the document is processed have to be reported back. Position writes run reservation hooks which change resources
+ * behind the holder's back, so products of written positions have to be invalidated and are reloaded on next use.
+ */
+public class DocumentResourcesHolder {
+
+    private final DataDefinition resourceDD;
+
+    private final Entity warehouse;
+
+    private final Long warehouseId;
+
+    private final Map<Long, Entity> resourcesById = Maps.newHashMap();
+
+    private final Map<Long, List<Entity>> resourcesByProduct = Maps.newHashMap();
+
+    private final Set<Long> deletedResourceIds = Sets.newHashSet();
+
+    private final Set<Long> staleProductIds = Sets.newHashSet();
+
+    DocumentResourcesHolder(final DataDefinition resourceDD, final Entity warehouse, final Collection<Long> productIds) {
+        this.resourceDD = resourceDD;
+        this.warehouse = warehouse;
+        this.warehouseId = warehouse.getId();
+
+        productIds.forEach(productId -> resourcesByProduct.put(productId, Lists.newArrayList()));
+
+        if (!productIds.isEmpty()) {
+            findResources(productIds).forEach(this::add);
+        }
+    }
+
+    private List<Entity> findResources(final Collection<Long> productIds) {
+        return resourceDD.find().add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
+                .add(SearchRestrictions.in(ResourceFields.PRODUCT + ".id", Lists.newArrayList(productIds)))
+                .addOrder(SearchOrders.asc("id")).list().getEntities();
+    }
+
+    public Entity getResource(final Long resourceId) {
+        if (deletedResourceIds.contains(resourceId)) {
+            return null;
+        }
+
+        Entity resource = resourceDD.get(resourceId);
+
+        if (Objects.nonNull(resource)) {
+            update(resource);
+        }
+
+        return resource;
+    }
+
+    public List<Entity> getResources(final Entity product, final Predicate<Entity> predicate,
+            final Comparator<Entity> comparator) {
+        if (staleProductIds.remove(product.getId())) {
+            reload(product.getId());
+        }
+
+        return resourcesByProduct.getOrDefault(product.getId(), Lists.newArrayList()).stream()
+                .filter(resource -> BigDecimal.ZERO.compareTo(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)) < 0)
+                .filter(resource -> !resource.getBooleanField(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL)).filter(predicate)
+                .sorted(comparator).collect(Collectors.toList());
+    }
+
+    public void add(final Entity resource) {
+        Entity location = resource.getBelongsToField(ResourceFields.LOCATION);
+        Entity product = resource.getBelongsToField(ResourceFields.PRODUCT);
+
+        resourcesById.put(resource.getId(), resource);
+
+        if (Objects.nonNull(location) && warehouseId.equals(location.getId()) && Objects.nonNull(product)
+                && resourcesByProduct.containsKey(product.getId())) {
+            List<Entity> resources = resourcesByProduct.get(product.getId());
+
+            resources.removeIf(cached -> cached.getId().equals(resource.getId()));
+            resources.add(resource);
+        }
+    }
+
+    public void update(final Entity resource) {
+        Entity cached = resourcesById.get(resource.getId());
+
+        if (Objects.isNull(cached)) {
+            add(resource);
+        } else {
+            resourcesById.put(resource.getId(), resource);
+            resourcesByProduct.values().forEach(resources -> resources.replaceAll(
+                    existing -> existing.getId().equals(resource.getId()) ? resource : existing));
+        }
+    }
+
+    public void invalidate(final Long productId) {
+        if (resourcesByProduct.containsKey(productId)) {
+            staleProductIds.add(productId);
+        }
+    }
+
+    private void reload(final Long productId) {
+        resourcesByProduct.put(productId, Lists.newArrayList());
+
+        findResources(Sets.newHashSet(productId)).forEach(this::add);
+    }
+
+    public void remove(final Long resourceId) {
+        deletedResourceIds.add(resourceId);
+        resourcesById.remove(resourceId);
+        resourcesByProduct.values().forEach(resources -> resources.removeIf(resource -> resource.getId().equals(resourceId)));
+    }
+
+    public static Comparator<Entity> comparatorFor(final WarehouseAlgorithm warehouseAlgorithm) {
+        Comparator<Entity> byTime = Comparator.comparing(resource -> resource.getDateField(ResourceFields.TIME));
+        Comparator<Entity> byExpirationDate = Comparator.comparing(
+                resource -> resource.getDateField(ResourceFields.EXPIRATION_DATE), Comparator.nullsLast(Date::compareTo));
+        Comparator<Entity> byAvailableQuantity = Comparator
+                .comparing(resource -> resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+
+        if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
+            return byTime.reversed();
+        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            return byExpirationDate.thenComparing(byAvailableQuantity);
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            return byExpirationDate.reversed().thenComparing(byAvailableQuantity);
+        } else {
+            return byTime;
+        }
+    }
+
+}
@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -154,32 +155,25 @@ public class ReservationsService {
                     });
             Long newResourceId = (Long) params.get("resource_id");
             Long oldResourceId = (Long) oldPosition.get("resource_id");
-            BigDecimal oldPositionQuantity = (BigDecimal) oldPosition.get("quantity");
+            BigDecimal oldPositionQuantity = BigDecimalUtils.convertNullToZero(oldPosition.get("quantity"));
 
             BigDecimal newQuantity = BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY));
-            BigDecimal quantityToAdd = newQuantity.subtract(oldPositionQuantity);
             String query = "UPDATE materialflowresources_reservation SET "
                     + "location_id = (SELECT locationfrom_id FROM materialflowresources_document WHERE id=:document_id), "
                     + "product_id = :product_id, quantity = :quantity, resource_id = :resource_id WHERE position_id = :id";
 
             jdbcTemplate.update(query, params);
 
-            if (oldResourceId != null && newResourceId != null) {
-                if (oldResourceId.compareTo(newResourceId) != 0) {
-                    resourceReservationsService.updateResourceQuantites(params, newQuantity);
-                    Map<String, Object> paramsForOld = Maps.newHashMap(params);
-                    paramsForOld.put("resource_id", oldResourceId);
-                    resourceReservationsService.updateResourceQuantites(paramsForOld, oldPositionQuantity.negate());
-                } else {
-                    resourceReservationsService.updateResourceQuantites(params, quantityToAdd);
-                }
-            } else if (oldResourceId == null && newResourceId != null) {
-                resourceReservationsService.updateResourceQuantites(params, newQuantity);
-            } else if (oldResourceId != null) {
-                Map<String, Object> paramsForOld = Maps.newHashMap(params);
-                paramsForOld.put("resource_id", oldResourceId);
-                resourceReservationsService.updateResourceQuantites(paramsForOld, oldPositionQuantity.negate());
+            Map<Long, BigDecimal> resourcesQuantitiesToAdd = Maps.newHashMap();
+
+            if (newResourceId != null) {
+                resourcesQuantitiesToAdd.merge(newResourceId, newQuantity, BigDecimal::add);
+            }
+            if (oldResourceId != null) {
+                resourcesQuantitiesToAdd.merge(oldResourceId, oldPositionQuantity.negate(), BigDecimal::add);
             }
+
+            resourceReservationsService.updateResourcesQuantities(resourcesQuantitiesToAdd);
         }
 
     }
@@ -238,6 +232,43 @@ public class ReservationsService {
                 BigDecimalUtils.convertNullToZero(params.get(L_QUANTITY)).negate());
     }
 
+    /**
+     * Deletes reservations for positions of one document and updates resource stock with one batched update. Uses
+     * jdbcTemplate.
+     *
+     * Warning! If logic in this method is changed, it should also be applied to corresponding single position method.
+     *
+     * @param documentId
+     *            id of document the positions belong to
+     * @param positions
+     *            list of maps containing keys: id (position id), quantity, resource_id
+     * @see ReservationsService#deleteReservationFromDocumentPosition(Map)
+     */
+    public void deleteReservationsFromDocumentPositions(final Long documentId, final List<Map<String, Object>> positions) {
+        if (positions.isEmpty()
+                || !reservationsEnabledForDocumentPositions(Collections.singletonMap("document_id", documentId))) {
+            return;
+        }
+
+        List<Object> positionIds = Lists.newArrayList();
+        Map<Long, BigDecimal> resourcesQuantitiesToAdd = Maps.newHashMap();
+
+        for (Map<String, Object> position : positions) {
+            positionIds.add(position.get("id"));
+
+            Long resourceId = (Long) position.get("resource_id");
+
+            if (resourceId != null) {
+                resourcesQuantitiesToAdd.merge(resourceId,
+                        BigDecimalUtils.convertNullToZero(position.get(L_QUANTITY)).negate(), BigDecimal::add);
+            }
+        }
+
+        String query = "DELETE FROM materialflowresources_reservation WHERE position_id IN (:ids)";
+        jdbcTemplate.update(query, Collections.singletonMap("ids", positionIds));
+        resourceReservationsService.updateResourcesQuantities(resourcesQuantitiesToAdd);
+    }
+
     /**
      * Deletes reservation for position and updates resource stock. Uses framework.
      *
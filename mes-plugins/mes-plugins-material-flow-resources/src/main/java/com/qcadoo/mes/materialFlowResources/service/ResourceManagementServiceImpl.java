@@ -24,22 +24,29 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.exception.LockAcquisitionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.qcadoo.commons.functional.Either;
 import com.qcadoo.mes.basic.CalculationQuantityService;
@@ -70,10 +77,6 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchCriterion;
-import com.qcadoo.model.api.search.SearchOrder;
-import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.security.api.UserService;
@@ -94,6 +97,9 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Autowired
     private PalletNumberDisposalService palletNumberDisposalService;
 
@@ -139,9 +145,12 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     public void createResourcesForReceiptDocuments(final Entity document) {
         Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_TO);
         Object date = document.getField(DocumentFields.TIME);
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+        Iterator<String> resourceNumbers = generateResourceNumbers(document.getDateField(DocumentFields.TIME), positions.size())
+                .iterator();
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
-            createResource(document, warehouse, position, date);
+        for (Entity position : positions) {
+            createResource(document, warehouse, position, date, resourceNumbers.next());
 
             position = position.getDataDefinition().save(position);
 
@@ -155,7 +164,23 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private void createResource(final Entity document, final Entity warehouse, final Entity position, final Object date) {
+    private List<String> generateResourceNumbers(final Date time, final int count) {
+        if (count == 0) {
+            return Lists.newArrayList();
+        }
+
+        String query = "SELECT generate_and_set_resource_number(:date) AS number "
+                + "FROM generate_series(1, :count) AS resourceNumber ORDER BY resourceNumber";
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("date", Objects.isNull(time) ? new Date() : time);
+        params.put("count", count);
+
+        return jdbcTemplate.queryForList(query, params, String.class);
+    }
+
+    private void createResource(final Entity document, final Entity warehouse, final Entity position, final Object date,
+            final String resourceNumber) {
         DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_RESOURCE);
 
@@ -164,6 +189,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         Entity user = document.getBelongsToField(DocumentFields.USER);
         Entity delivery = document.getBelongsToField(ResourceFields.DELIVERY);
 
+        resource.setField(ResourceFields.NUMBER, resourceNumber);
         resource.setField(ResourceFields.USER_NAME,
                 user.getStringField(UserFields.FIRST_NAME) + " " + user.getStringField(UserFields.LAST_NAME));
         resource.setField(ResourceFields.TIME, date);
@@ -303,94 +329,98 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private SearchCriteriaBuilder getSearchCriteriaForResourceForProductAndWarehouse(final Entity product,
-            final Entity warehouse) {
-        return dataDefinitionService
-                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE).find()
-                .add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
-                .add(SearchRestrictions.belongsTo(ResourceFields.PRODUCT, product))
-                .add(SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO));
-
-    }
-
     public Multimap<Long, BigDecimal> getQuantitiesInWarehouse(final Entity warehouse,
             final Multimap<Entity, Entity> productsAndPositions) {
         Multimap<Long, BigDecimal> result = ArrayListMultimap.create();
 
+        Multimap<Long, AvailableQuantityGroup> availableQuantityGroups = getAvailableQuantityGroups(warehouse,
+                productsAndPositions.keySet().stream().map(Entity::getId).collect(Collectors.toSet()));
+
         for (Map.Entry<Entity, Entity> productAndPosition : productsAndPositions.entries()) {
-            Entity additionalCode = productAndPosition.getValue().getBelongsToField(PositionFields.ADDITIONAL_CODE);
+            Entity product = productAndPosition.getKey();
             BigDecimal conversion = productAndPosition.getValue().getDecimalField(PositionFields.CONVERSION);
             Entity batch = productAndPosition.getValue().getBelongsToField(PositionFields.BATCH);
 
-            List<Entity> resources = Lists.newArrayList();
+            if (StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+                conversion = BigDecimal.ONE;
+            }
 
-            if (additionalCode != null) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
+            BigDecimal availableQuantity = BigDecimal.ZERO;
 
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
+            for (AvailableQuantityGroup availableQuantityGroup : availableQuantityGroups.get(product.getId())) {
+                if (availableQuantityGroup.matches(conversion, batch)) {
+                    availableQuantity = availableQuantity.add(availableQuantityGroup.availableQuantity);
                 }
+            }
 
-                if (Objects.nonNull(batch)) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, batch));
-                }
-                resources = scb.add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode)).list()
-                        .getEntities();
+            if (result.containsKey(product.getId())) {
+                BigDecimal currentQuantity = result.get(product.getId()).stream().reduce(BigDecimal.ZERO, BigDecimal::add);
 
-                scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(), warehouse);
+                result.put(product.getId(), availableQuantity.add(currentQuantity));
+            } else {
+                result.put(product.getId(), availableQuantity);
+            }
+        }
 
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
+        return result;
+    }
 
-                if (Objects.nonNull(batch)) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, batch));
-                }
+    /**
+     * Sums available quantities of resources in warehouse, grouped by product, conversion and batch. Additional code is not a
+     * part of the grouping, as resources with matching and not matching codes are both counted for positions with code.
+     * Groups are returned by product id, so each position only scans the groups of its own product.
+     */
+    private Multimap<Long, AvailableQuantityGroup> getAvailableQuantityGroups(final Entity warehouse,
+            final Set<Long> productIds) {
+        Multimap<Long, AvailableQuantityGroup> availableQuantityGroups = ArrayListMultimap.create();
+
+        if (productIds.isEmpty()) {
+            return availableQuantityGroups;
+        }
 
-                resources
-                        .addAll(scb
-                                .add(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                                        SearchRestrictions.ne("additionalCode.id", additionalCode.getId())))
-                                .list().getEntities());
-            }
+        String query = "SELECT resource.product_id AS productId, resource.conversion AS conversion, "
+                + "resource.batch_id AS batchId, SUM(resource.availablequantity) AS availableQuantity "
+                + "FROM materialflowresources_resource resource "
+                + "WHERE resource.location_id = :warehouseId AND resource.product_id IN (:productIds) "
+                + "AND resource.availablequantity > 0 "
+                + "GROUP BY resource.product_id, resource.conversion, resource.batch_id";
 
-            if (resources.isEmpty()) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("warehouseId", warehouse.getId());
+        params.put("productIds", productIds);
 
-                if (Objects.nonNull(batch)) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, batch));
-                }
+        jdbcTemplate.query(query, params,
+                (rs, rowNum) -> new AvailableQuantityGroup(rs.getLong("productId"), rs.getBigDecimal("conversion"),
+                        (Long) rs.getObject("batchId"), rs.getBigDecimal("availableQuantity")))
+                .forEach(availableQuantityGroup -> availableQuantityGroups.put(availableQuantityGroup.productId,
+                        availableQuantityGroup));
 
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
+        return availableQuantityGroups;
+    }
 
-                resources = scb.list().getEntities();
-            }
+    private static class AvailableQuantityGroup {
 
-            if (result.containsKey(productAndPosition.getKey().getId())) {
-                BigDecimal currentQuantity = result.get(productAndPosition.getKey().getId()).stream().reduce(BigDecimal.ZERO,
-                        BigDecimal::add);
+        private final Long productId;
 
-                result.put(productAndPosition.getKey().getId(),
-                        (resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))
-                                .reduce(BigDecimal.ZERO, BigDecimal::add)).add(currentQuantity));
-            } else {
-                result.put(productAndPosition.getKey().getId(),
-                        resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))
-                                .reduce(BigDecimal.ZERO, BigDecimal::add));
-            }
+        private final BigDecimal conversion;
+
+        private final Long batchId;
+
+        private final BigDecimal availableQuantity;
+
+        AvailableQuantityGroup(final Long productId, final BigDecimal conversion, final Long batchId,
+                final BigDecimal availableQuantity) {
+            this.productId = productId;
+            this.conversion = conversion;
+            this.batchId = batchId;
+            this.availableQuantity = availableQuantity;
+        }
+
+        boolean matches(final BigDecimal conversion, final Entity batch) {
+            return Objects.nonNull(this.conversion) && Objects.nonNull(conversion) && this.conversion.compareTo(conversion) == 0
+                    && (Objects.isNull(batch) || batch.getId().equals(batchId));
         }
 
-        return result;
     }
 
     private Multimap<Entity, Entity> getProductsAndPositionsFromDocument(final Entity document) {
@@ -433,11 +463,15 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         boolean transferPalletToReceivingWarehouse = documentPositionParameters.getBooleanField(
                 DocumentPositionParametersFields.TRANSFER_PALLET_TO_RECEIVING_WAREHOUSE) && buildConnectedDocument(document);
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        DocumentResourcesHolder resourcesHolder = createDocumentResourcesHolder(warehouse, positions);
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            Either<BigDecimal, List<Entity>> eitherPositions = updateResources(warehouse, position, warehouseAlgorithm,
-                    isFromOrder, transferPalletToReceivingWarehouse);
+            Either<BigDecimal, List<Entity>> eitherPositions = updateResources(resourcesHolder, warehouse, position,
+                    warehouseAlgorithm, isFromOrder, transferPalletToReceivingWarehouse);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -465,6 +499,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     Entity saved = position.getDataDefinition().save(position);
                     addPositionErrors(document, saved);
                 }
+
+                resourcesHolder.invalidate(product.getId());
             }
         }
 
@@ -520,13 +556,15 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private Either<BigDecimal, List<Entity>> updateResources(final Entity warehouse, final Entity position,
-            final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder, boolean transferPalletToReceivingWarehouse) {
+    private Either<BigDecimal, List<Entity>> updateResources(final DocumentResourcesHolder resourcesHolder,
+            final Entity warehouse, final Entity position, final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder,
+            boolean transferPalletToReceivingWarehouse) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(resourcesHolder, product, position,
+                warehouseAlgorithm);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
@@ -574,6 +612,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
 
                     resource.getDataDefinition().delete(resource.getId());
+                    resourcesHolder.remove(resource.getId());
 
                     if (!transferPalletToReceivingWarehouse) {
                         palletNumberDisposalService.tryToDispose(palletNumberToDispose);
@@ -592,6 +631,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     if (!savedResource.isValid()) {
                         throw new InvalidResourceException(savedResource);
                     }
+
+                    resourcesHolder.update(savedResource);
                 }
 
                 newPosition.setField(PositionFields.QUANTITY,
@@ -621,6 +662,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     throw new InvalidResourceException(savedResource);
                 }
 
+                resourcesHolder.update(savedResource);
+
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(quantity));
                 newPosition.setField(PositionFields.GIVEN_QUANTITY, givenQuantity);
 
@@ -650,11 +693,15 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         boolean isFromOrder = Objects.nonNull(document.getBelongsToField(L_ORDER));
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        DocumentResourcesHolder resourcesHolder = createDocumentResourcesHolder(warehouseFrom, positions);
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            Either<BigDecimal, List<Entity>> eitherPositions = moveResources(warehouseFrom, warehouseTo, position, date,
-                    warehouseAlgorithm, isFromOrder);
+            Either<BigDecimal, List<Entity>> eitherPositions = moveResources(resourcesHolder, warehouseFrom, warehouseTo,
+                    position, date, warehouseAlgorithm, isFromOrder);
 
             enoughResources = enoughResources && position.isValid();
 
@@ -682,6 +729,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     Entity saved = position.getDataDefinition().save(position);
                     addPositionErrors(document, saved);
                 }
+
+                resourcesHolder.invalidate(product.getId());
             }
         }
 
@@ -696,13 +745,14 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private Either<BigDecimal, List<Entity>> moveResources(final Entity warehouseFrom, final Entity warehouseTo,
-            final Entity position, final Object date, final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder) {
+    private Either<BigDecimal, List<Entity>> moveResources(final DocumentResourcesHolder resourcesHolder,
+            final Entity warehouseFrom, final Entity warehouseTo, final Entity position, final Object date,
+            final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouseFrom, product, position,
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(resourcesHolder, product, position,
                 warehouseAlgorithm);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
@@ -757,6 +807,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
 
                     resource.getDataDefinition().delete(resource.getId());
+                    resourcesHolder.remove(resource.getId());
 
                     if (!transferPalletToReceivingWarehouse) {
                         palletNumberDisposalService.tryToDispose(palletNumberToDispose);
@@ -775,11 +826,17 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     if (!savedResource.isValid()) {
                         throw new InvalidResourceException(savedResource);
                     }
+
+                    resourcesHolder.update(savedResource);
                 }
 
                 Entity newResource = createResource(position, warehouseTo, resource, resourceAvailableQuantity, date,
                         transferPalletToReceivingWarehouse);
 
+                if (newResource.isValid()) {
+                    resourcesHolder.add(newResource);
+                }
+
                 newPosition.setField(PositionFields.QUANTITY,
                         numberService.setScaleWithDefaultMathContext(resourceAvailableQuantity));
                 newPosition.setField(PositionFields.GIVEN_QUANTITY, givenResourceAvailableQuantity);
@@ -813,9 +870,15 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     throw new InvalidResourceException(savedResource);
                 }
 
+                resourcesHolder.update(savedResource);
+
                 Entity newResource = createResource(position, warehouseTo, resource, quantity, date,
                         transferPalletToReceivingWarehouse);
 
+                if (newResource.isValid()) {
+                    resourcesHolder.add(newResource);
+                }
+
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(quantity));
                 newPosition.setField(PositionFields.GIVEN_QUANTITY, givenQuantity);
 
@@ -846,17 +909,25 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private List<Entity> getResourcesForWarehouseProductAndAlgorithm(final Entity warehouse, final Entity product,
-            final Entity position, final WarehouseAlgorithm warehouseAlgorithm) {
+    private DocumentResourcesHolder createDocumentResourcesHolder(final Entity warehouse, final List<Entity> positions) {
+        DataDefinition resourceDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_RESOURCE);
+
+        Set<Long> productIds = positions.stream().map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId())
+                .collect(Collectors.toSet());
+
+        return new DocumentResourcesHolder(resourceDD, warehouse, productIds);
+    }
+
+    private List<Entity> getResourcesForWarehouseProductAndAlgorithm(final DocumentResourcesHolder resourcesHolder,
+            final Entity product, final Entity position, final WarehouseAlgorithm warehouseAlgorithm) {
         List<Entity> resources = Lists.newArrayList();
 
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
         Entity additionalCode = position.getBelongsToField(PositionFields.ADDITIONAL_CODE);
 
         if (resource != null && resource.getId() != null) {
-            resource = dataDefinitionService
-                    .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE)
-                    .get(resource.getId());
+            resource = resourcesHolder.getResource(resource.getId());
         }
 
         if (resource != null) {
@@ -870,86 +941,65 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
 
             resources.add(resource);
-        } else if (WarehouseAlgorithm.FIFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductFIFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductLIFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductFEFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductLEFO(warehouse, product, additionalCode, position);
+        } else {
+            resources = getResourcesForLocationCommonCode(resourcesHolder, product, additionalCode, position,
+                    DocumentResourcesHolder.comparatorFor(warehouseAlgorithm));
         }
 
         return resources;
     }
 
-    private List<Entity> getResourcesForLocationCommonCodeConversion(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position, final boolean resourceIrrespectiveOfConversion,
-            final SearchOrder... searchOrders) {
-
-        class SearchCriteriaHelper {
-
-            private List<Entity> getAll() {
-                return getAllThatSatisfies(null);
-            }
-
-            private List<Entity> getAllThatSatisfies(SearchCriterion searchCriterion) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-                if (resourceIrrespectiveOfConversion) {
-                    if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                        scb.add(SearchRestrictions.ne(PositionFields.CONVERSION,
-                                position.getDecimalField(PositionFields.CONVERSION)));
-                    } else {
-                        scb.add(SearchRestrictions.ne(ResourceFields.CONVERSION, BigDecimal.ONE));
-                    }
-                } else {
-                    if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                        scb.add(SearchRestrictions.eq(PositionFields.CONVERSION,
-                                position.getDecimalField(PositionFields.CONVERSION)));
-                    } else {
-                        scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                    }
-                }
-
-                if (Objects.nonNull(position.getBelongsToField(PositionFields.BATCH))) {
-                    scb.add(SearchRestrictions.belongsTo(ResourceFields.BATCH, position.getBelongsToField(PositionFields.BATCH)));
-                }
+    private List<Entity> getResourcesForLocationCommonCodeConversion(final DocumentResourcesHolder resourcesHolder,
+            final Entity product, final Entity additionalCode, final Entity position,
+            final boolean resourceIrrespectiveOfConversion, final Comparator<Entity> comparator) {
+        BigDecimal conversion;
 
-                scb.add(SearchRestrictions.eq(ResourceFields.BLOCKED_FOR_QUALITY_CONTROL, false));
+        if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+            conversion = position.getDecimalField(PositionFields.CONVERSION);
+        } else {
+            conversion = BigDecimal.ONE;
+        }
 
-                Optional.ofNullable(searchCriterion).ifPresent(scb::add);
+        Entity batch = position.getBelongsToField(PositionFields.BATCH);
 
-                for (SearchOrder searchOrder : searchOrders) {
-                    scb.addOrder(searchOrder);
-                }
+        Predicate<Entity> conversionAndBatchPredicate = resource -> {
+            BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
 
-                return scb.list().getEntities();
+            if (Objects.isNull(conversion) || Objects.isNull(resourceConversion)
+                    || (conversion.compareTo(resourceConversion) == 0) == resourceIrrespectiveOfConversion) {
+                return false;
             }
-        }
+
+            return Objects.isNull(batch) || hasSameId(resource.getBelongsToField(ResourceFields.BATCH), batch);
+        };
 
         List<Entity> resources = Lists.newArrayList();
 
         if (additionalCode != null) {
-            resources = new SearchCriteriaHelper()
-                    .getAllThatSatisfies(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode));
+            resources = resourcesHolder.getResources(product, conversionAndBatchPredicate.and(
+                    resource -> hasSameId(resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE), additionalCode)),
+                    comparator);
 
-            resources.addAll(new SearchCriteriaHelper()
-                    .getAllThatSatisfies(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                            SearchRestrictions.ne("additionalCode.id", additionalCode.getId()))));
+            resources.addAll(resourcesHolder.getResources(product, conversionAndBatchPredicate.and(
+                    resource -> !hasSameId(resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE), additionalCode)),
+                    comparator));
         }
 
         if (resources.isEmpty()) {
-            resources = new SearchCriteriaHelper().getAll();
+            resources = resourcesHolder.getResources(product, conversionAndBatchPredicate, comparator);
         }
 
         return resources;
     }
 
-    private List<Entity> getResourcesForLocationCommonCode(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position, final SearchOrder... searchOrders) {
-        List<Entity> resources = getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, false,
-                searchOrders);
+    private boolean hasSameId(final Entity entity, final Entity otherEntity) {
+        return Objects.nonNull(entity) && entity.getId().equals(otherEntity.getId());
+    }
+
+    private List<Entity> getResourcesForLocationCommonCode(final DocumentResourcesHolder resourcesHolder, final Entity product,
+            final Entity additionalCode, final Entity position, final Comparator<Entity> comparator) {
+        List<Entity> resources = getResourcesForLocationCommonCodeConversion(resourcesHolder, product, additionalCode, position,
+                false, comparator);
 
         Entity documentPositionParameters = parameterService.getParameter()
                 .getBelongsToField(ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
@@ -958,37 +1008,13 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 .getBooleanField(DocumentPositionParametersFields.FILL_RESOURCE_IRRESPECTIVE_OF_CONVERSION);
 
         if (fillResourceIrrespectiveOfConversion) {
-            resources.addAll(getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, true,
-                    searchOrders));
+            resources.addAll(getResourcesForLocationCommonCodeConversion(resourcesHolder, product, additionalCode, position,
+                    true, comparator));
         }
 
         return resources;
     }
 
-    private List<Entity> getResourcesForLocationAndProductFIFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.asc(ResourceFields.TIME));
-    }
-
-    private List<Entity> getResourcesForLocationAndProductLIFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.desc(ResourceFields.TIME));
-    }
-
-    private List<Entity> getResourcesForLocationAndProductFEFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.asc(ResourceFields.EXPIRATION_DATE), SearchOrders.asc(ResourceFields.AVAILABLE_QUANTITY));
-    }
-
-    private List<Entity> getResourcesForLocationAndProductLEFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.desc(ResourceFields.EXPIRATION_DATE), SearchOrders.asc(ResourceFields.AVAILABLE_QUANTITY));
-    }
-
     @Transactional(isolation = Isolation.REPEATABLE_READ)
     public void fillResourcesInDocument(final ViewDefinitionState view, final Entity document) throws LockAcquisitionException {
         LOGGER.info("FILL RESOURCES STARTED IN DOCUMENT: id = " + document.getId() + " number = "
@@ -1008,9 +1034,12 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         boolean valid = true;
         boolean updatePositionsNumbers = false;
 
+        DocumentResourcesHolder resourcesHolder = createDocumentResourcesHolder(warehouse, positions);
+
         for (Entity position : positions) {
             if (position.getBelongsToField(PositionFields.RESOURCE) == null) {
-                List<Entity> newPositions = matchResourcesToPosition(position, warehouse, warehouseAlgorithm, isFromOrder);
+                List<Entity> newPositions = matchResourcesToPosition(resourcesHolder, position, warehouse, warehouseAlgorithm,
+                        isFromOrder);
 
                 if (!newPositions.isEmpty()) {
                     LOGGER.info("GENERATED POSITIONS IN DOCUMENT: id = " + document.getId() + ", FOR POSITION: id = "
@@ -1034,6 +1063,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                         valid = valid && saved.isValid();
                         addPositionErrors(view, saved);
                     }
+
+                    resourcesHolder.invalidate(position.getBelongsToField(PositionFields.PRODUCT).getId());
                 }
             }
         }
@@ -1064,15 +1095,16 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private List<Entity> matchResourcesToPosition(final Entity position, final Entity warehouse,
-            final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder) {
+    private List<Entity> matchResourcesToPosition(final DocumentResourcesHolder resourcesHolder, final Entity position,
+            final Entity warehouse, final WarehouseAlgorithm warehouseAlgorithm, boolean isFromOrder) {
         DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_POSITION);
 
         List<Entity> newPositions = Lists.newArrayList();
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(resourcesHolder, product, position,
+                warehouseAlgorithm);
 
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
         BigDecimal conversion = BigDecimalUtils.convertNullToOne(position.getDecimalField(PositionFields.CONVERSION));
@@ -2,11 +2,16 @@ package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
 import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
@@ -31,6 +36,35 @@ public class ResourceReservationsService {
         }
     }
 
+    /**
+     * Adds given quantities to reserved quantities (and subtracts them from available quantities) of resources with one batched
+     * update. Changes are summed per resource and applied in resource id order, so concurrent documents lock resources in the
+     * same order.
+     *
+     * @param resourcesQuantitiesToAdd
+     *            map of resource id and quantity to add to its reservations
+     */
+    void updateResourcesQuantities(Map<Long, BigDecimal> resourcesQuantitiesToAdd) {
+        SortedMap<Long, BigDecimal> quantitiesToAdd = Maps.newTreeMap();
+
+        resourcesQuantitiesToAdd.forEach((resourceId, quantityToAdd) -> {
+            if (Objects.nonNull(resourceId)) {
+                quantitiesToAdd.merge(resourceId, quantityToAdd, BigDecimal::add);
+            }
+        });
+
+        SqlParameterSource[] batchParameters = quantitiesToAdd.entrySet().stream()
+                .filter(quantityToAdd -> quantityToAdd.getValue().signum() != 0)
+                .map(quantityToAdd -> new MapSqlParameterSource("resource_id", quantityToAdd.getKey()).addValue(
+                        "quantity_to_add", quantityToAdd.getValue())).toArray(SqlParameterSource[]::new);
+
+        if (batchParameters.length > 0) {
+            String query = "UPDATE materialflowresources_resource SET reservedquantity = reservedquantity + :quantity_to_add, "
+                    + "availablequantity = availablequantity - :quantity_to_add WHERE id = :resource_id";
+            jdbcTemplate.batchUpdate(query, batchParameters);
+        }
+    }
+
     public void updateResourceQuantites(Entity position, BigDecimal quantityToAdd) {
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
         if (resource != null) {
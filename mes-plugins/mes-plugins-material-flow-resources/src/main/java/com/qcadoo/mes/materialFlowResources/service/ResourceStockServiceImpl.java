@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -39,8 +40,7 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     public void createResourceStock(final Entity resource) {
         Entity product = resource.getBelongsToField(ResourceFields.PRODUCT);
         Entity location = resource.getBelongsToField(ResourceFields.LOCATION);
-        Optional<ResourceStockDto> maybeStock = getResourceStockForProductAndLocation(product, location);
-        if (!maybeStock.isPresent()) {
+        if (!resourceStockExists(product, location)) {
             DataDefinition resourceStockDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                     MaterialFlowResourcesConstants.MODEL_RESOURCE_STOCK);
             Entity stock = resourceStockDD.create();
@@ -70,6 +70,40 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         return quantity;
     }
 
+    private boolean resourceStockExists(final Entity product, final Entity location) {
+        String query = "SELECT EXISTS (SELECT 1 FROM materialflowresources_resourcestock rs "
+                + "WHERE rs.location_id = :locationId AND rs.product_id = :productId)";
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("locationId", location.getId());
+        params.put("productId", product.getId());
+
+        return jdbcTemplate.queryForObject(query, params, Boolean.class);
+    }
+
+    private Map<Long, BigDecimal> getResourceStockAvailableQuantities(final Entity location, final Set<Long> productIds) {
+        Map<Long, BigDecimal> availableQuantities = Maps.newHashMap();
+
+        if (productIds.isEmpty()) {
+            return availableQuantities;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT rs.product_id AS productId, rs.availablequantity AS availableQuantity ");
+        query.append("FROM materialflowresources_resourcestockdto rs ");
+        query.append("WHERE rs.location_id = :locationId AND rs.product_id IN (:productIds)");
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("locationId", location.getId().intValue());
+        params.put("productIds", productIds.stream().map(Long::intValue).collect(Collectors.toList()));
+
+        jdbcTemplate.query(query.toString(), params, rs -> {
+            availableQuantities.putIfAbsent(rs.getLong("productId"), rs.getBigDecimal("availableQuantity"));
+        });
+
+        return availableQuantities;
+    }
+
     private Optional<ResourceStockDto> getResourceStockForProductAndLocation(Entity product, Entity location) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT rs.* ");
@@ -93,11 +127,14 @@ public class ResourceStockServiceImpl implements ResourceStockService {
     public void checkResourcesStock(Entity document) {
         List<String> invalidProducts = new ArrayList<>();
         List<Entity> mergedPositions = mergePositionsBeforeValidation(document.getHasManyField(DocumentFields.POSITIONS));
+        Map<Long, BigDecimal> availableQuantities = getResourceStockAvailableQuantities(
+                document.getBelongsToField(DocumentFields.LOCATION_FROM),
+                mergedPositions.stream().map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId())
+                        .collect(Collectors.toSet()));
         for (Entity position : mergedPositions) {
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
             if ((position.getDecimalField(PositionFields.QUANTITY)
-                    .compareTo(getResourceStockAvailableQuantity(position.getBelongsToField(PositionFields.PRODUCT),
-                            document.getBelongsToField(DocumentFields.LOCATION_FROM))) > 0)) {
-                Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+                    .compareTo(availableQuantities.getOrDefault(product.getId(), BigDecimal.ZERO)) > 0)) {
                 invalidProducts.add(product.getStringField(ProductFields.NUMBER));
             }
         }
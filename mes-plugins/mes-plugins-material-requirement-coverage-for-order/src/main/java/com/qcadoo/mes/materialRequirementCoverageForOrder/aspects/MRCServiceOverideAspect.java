@@ -110,22 +110,31 @@ public class MRCServiceOverideAspect {
         return registerProducts.stream().map(p -> ((Number) p.getField("productId")).longValue()).collect(Collectors.toList());
     }
 
-    @Pointcut("execution(private void com.qcadoo.mes.orderSupplies.coverage.MaterialRequirementCoverageServiceImpl.saveCoverageProduct(..)) "
-            + "&& args(materialRequirementCoverage, covProduct)")
-    public void saveCoverageProductA(Entity materialRequirementCoverage, Entity covProduct) {
+    @Pointcut("execution(private void com.qcadoo.mes.orderSupplies.coverage.MaterialRequirementCoverageServiceImpl.saveCoverageProducts(..)) "
+            + "&& args(materialRequirementCoverage, covProducts)")
+    public void saveCoverageProductsA(Entity materialRequirementCoverage, List<Entity> covProducts) {
     }
 
-    @Around("saveCoverageProductA(materialRequirementCoverage, covProduct)")
-    public void aroundSaveCoverageProduct(final ProceedingJoinPoint pjp, Entity materialRequirementCoverage, Entity covProduct) {
+    @Around("saveCoverageProductsA(materialRequirementCoverage, covProducts)")
+    public void aroundSaveCoverageProducts(final ProceedingJoinPoint pjp, Entity materialRequirementCoverage,
+            List<Entity> covProducts) {
         String sql = "INSERT INTO ordersupplies_coverageproduct "
-                + "(materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
+                + "(id, materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
                 + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
                 + "productunit, productType, planedQuantity, produceQuantity,fromSelectedOrder, company_id) "
-                + "VALUES (:materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
+                + "VALUES (:id, :materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
                 + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
                 + ":productunit, :productType, :planedQuantity, :produceQuantity,:fromSelectedOrder, :company_id)";
 
+        SqlParameterSource[] batchParameters = covProducts.stream()
+                .map(covProduct -> getCoverageProductParameters(materialRequirementCoverage, covProduct))
+                .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(sql, batchParameters);
+    }
+
+    private SqlParameterSource getCoverageProductParameters(Entity materialRequirementCoverage, Entity covProduct) {
         Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("id", covProduct.getId());
         parameters.put(L_PRODUCT_TYPE, covProduct.getStringField(L_PRODUCT_TYPE));
         parameters.put(L_PLANNED_QUANTITY, covProduct.getDecimalField(L_PLANNED_QUANTITY));
         parameters.put("materialrequirementcoverage_id", materialRequirementCoverage.getId());
@@ -152,8 +161,7 @@ public class MRCServiceOverideAspect {
                 covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.UNIT));
         parameters.put("fromSelectedOrder", covProduct.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER));
 
-        SqlParameterSource namedParameters = new MapSqlParameterSource(parameters);
-        jdbcTemplate.update(sql, namedParameters);
+        return new MapSqlParameterSource(parameters);
     }
 
 }
@@ -49,8 +49,10 @@ import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.deliveries.DeliveriesService;
+import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
 import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
 import com.qcadoo.mes.deliveries.constants.DeliveryFields;
+import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
 import com.qcadoo.mes.deliveries.states.constants.DeliveryStateStringValues;
 import com.qcadoo.mes.materialFlow.constants.LocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
@@ -74,6 +76,7 @@ import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
 import com.qcadoo.model.api.search.JoinType;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 
@@ -88,6 +91,10 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
     private static final String L_ID = "id";
 
+    private static final String L_PRODUCT = "product";
+
+    private static final int L_BATCH_SIZE = 1000;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -197,34 +204,63 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
     private void saveCoverage(final Entity materialRequirementCoverage, final List<Entity> entities) {
         List<Entity> selectedOrders = materialRequirementCoverage.getHasManyField("coverageOrders");
 
+        List<Entity> coverageProducts = entities;
+
         if (!selectedOrders.isEmpty()) {
-            List<Entity> filtredEntities = entities.stream()
-                    .filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER)).collect(Collectors.toList());
+            coverageProducts = entities.stream().filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER))
+                    .collect(Collectors.toList());
+        }
 
-            for (Entity covProduct : filtredEntities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
-            }
-        } else {
-            for (Entity covProduct : entities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
+        if (coverageProducts.isEmpty()) {
+            return;
+        }
+
+        assignCoverageProductIds(coverageProducts);
+
+        for (List<Entity> coverageProductsBatch : Lists.partition(coverageProducts, L_BATCH_SIZE)) {
+            saveCoverageProducts(materialRequirementCoverage, coverageProductsBatch);
+        }
+
+        List<SqlParameterSource> coverageProductLoggingsParameters = Lists.newArrayList();
+
+        for (Entity coverageProduct : coverageProducts) {
+            for (Entity coverageProductLogging : coverageProduct
+                    .getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
+                coverageProductLoggingsParameters.add(getCoverageProductLoggingParameters(coverageProduct,
+                        coverageProductLogging));
             }
         }
+
+        for (List<SqlParameterSource> coverageProductLoggingsBatch : Lists.partition(coverageProductLoggingsParameters,
+                L_BATCH_SIZE)) {
+            saveCoverageProductLoggings(coverageProductLoggingsBatch);
+        }
+    }
+
+    private void assignCoverageProductIds(final List<Entity> coverageProducts) {
+        String sql = "SELECT nextval('ordersupplies_coverageproduct_id_seq') FROM generate_series(1, :count)";
+
+        List<Long> ids = jdbcTemplate.queryForList(sql, new MapSqlParameterSource("count", coverageProducts.size()),
+                Long.class);
+
+        for (int i = 0; i < coverageProducts.size(); i++) {
+            coverageProducts.get(i).setId(ids.get(i));
+        }
     }
 
-    private void saveCoverageProductLogging(final Entity log) {
+    private void saveCoverageProductLoggings(final List<SqlParameterSource> coverageProductLoggingsParameters) {
         String sqlLog = "INSERT INTO ordersupplies_coverageproductlogging(coverageproduct_id, date, "
                 + "order_id, delivery_id, operation_id, reservemissingquantity, changes, eventtype, state, warehouseNumber, deliveryNumberExternal) "
-                + "VALUES (currval('ordersupplies_coverageproduct_id_seq'), :date, :order_id, :delivery_id, :operation_id, "
+                + "VALUES (:coverageproduct_id, :date, :order_id, :delivery_id, :operation_id, "
                 + ":reservemissingquantity, :changes, :eventtype, :state, :warehouseNumber, :deliveryNumberExternal);";
 
+        jdbcTemplate.batchUpdate(sqlLog, coverageProductLoggingsParameters.toArray(new SqlParameterSource[0]));
+    }
+
+    private SqlParameterSource getCoverageProductLoggingParameters(final Entity coverageProduct, final Entity log) {
         Map<String, Object> parametersLogg = Maps.newHashMap();
 
+        parametersLogg.put("coverageproduct_id", coverageProduct.getId());
         parametersLogg.put("date", log.getDateField(CoverageProductLoggingFields.DATE));
 
         if (log.getBelongsToField(CoverageProductLoggingFields.DELIVERY) != null) {
@@ -253,22 +289,30 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         parametersLogg.put("warehouseNumber", log.getStringField(CoverageProductLoggingFields.WAREHOUSE_NUMBER));
         parametersLogg.put("deliveryNumberExternal", log.getStringField("deliveryNumberExternal"));
 
-        SqlParameterSource nParameters = new MapSqlParameterSource(parametersLogg);
-
-        jdbcTemplate.update(sqlLog, nParameters);
+        return new MapSqlParameterSource(parametersLogg);
     }
 
-    private void saveCoverageProduct(final Entity materialRequirementCoverage, final Entity coverageProduct) {
+    private void saveCoverageProducts(final Entity materialRequirementCoverage, final List<Entity> coverageProducts) {
         String sql = "INSERT INTO ordersupplies_coverageproduct "
-                + "(materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
+                + "(id, materialrequirementcoverage_id, product_id, lackfromdate, demandquantity, coveredquantity, "
                 + "reservemissingquantity, deliveredquantity, locationsquantity, state, productnumber, productname, "
                 + "productunit, produceQuantity, fromSelectedOrder, company_id) "
-                + "VALUES (:materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
+                + "VALUES (:id, :materialrequirementcoverage_id, :product_id, :lackfromdate, :demandquantity, :coveredquantity, "
                 + ":reservemissingquantity, :deliveredquantity, :locationsquantity, :state, :productnumber, :productname, "
                 + ":productunit, :produceQuantity, :fromSelectedOrder, :company_id)";
 
+        SqlParameterSource[] batchParameters = coverageProducts.stream()
+                .map(coverageProduct -> getCoverageProductParameters(materialRequirementCoverage, coverageProduct))
+                .toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(sql, batchParameters);
+    }
+
+    private SqlParameterSource getCoverageProductParameters(final Entity materialRequirementCoverage,
+            final Entity coverageProduct) {
         Map<String, Object> parameters = Maps.newHashMap();
 
+        parameters.put("id", coverageProduct.getId());
         parameters.put("materialrequirementcoverage_id", materialRequirementCoverage.getId());
         parameters.put("product_id", coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getId());
 
@@ -296,9 +340,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 coverageProduct.getBelongsToField(CoverageProductFields.PRODUCT).getStringField(ProductFields.UNIT));
         parameters.put("fromSelectedOrder", coverageProduct.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER));
 
-        SqlParameterSource namedParameters = new MapSqlParameterSource(parameters);
-
-        jdbcTemplate.update(sql, namedParameters);
+        return new MapSqlParameterSource(parameters);
     }
 
     // Do not remove, around by aspect
@@ -400,16 +442,32 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
     private void estimateProductDeliveriesInTime(final Entity materialRequirementCoverage,
             final Map<Long, Entity> productAndCoverageProducts, final List<Entity> includedDeliveries, final Date actualDate,
             final Date coverageToDate, final Boolean includeDraftDeliveries) {
-        for (Entity delivery : includedDeliveries) {
-            Date coverageDate = getCoverageProductLoggingDateForDelivery(delivery, actualDate);
+        if (includedDeliveries.isEmpty() || productAndCoverageProducts.isEmpty()) {
+            return;
+        }
 
-            List<Entity> deliveryProducts;
+        List<Long> deliveredProductsDeliveryIds = Lists.newArrayList();
+        List<Long> orderedProductsDeliveryIds = Lists.newArrayList();
 
+        for (Entity delivery : includedDeliveries) {
             if (DeliveryStateStringValues.RECEIVE_CONFIRM_WAITING.equals(delivery.getStringField(DeliveryFields.STATE))) {
-                deliveryProducts = delivery.getHasManyField(DeliveryFields.DELIVERED_PRODUCTS);
+                deliveredProductsDeliveryIds.add(delivery.getId());
             } else {
-                deliveryProducts = delivery.getHasManyField(DeliveryFields.ORDERED_PRODUCTS);
+                orderedProductsDeliveryIds.add(delivery.getId());
             }
+        }
+
+        Map<Long, List<Entity>> deliveriesProducts = Maps.newHashMap();
+
+        collectDeliveriesProducts(deliveriesService.getDeliveredProductDD(), DeliveredProductFields.DELIVERY,
+                deliveredProductsDeliveryIds, productAndCoverageProducts, deliveriesProducts);
+        collectDeliveriesProducts(deliveriesService.getOrderedProductDD(), OrderedProductFields.DELIVERY,
+                orderedProductsDeliveryIds, productAndCoverageProducts, deliveriesProducts);
+
+        for (Entity delivery : includedDeliveries) {
+            Date coverageDate = getCoverageProductLoggingDateForDelivery(delivery, actualDate);
+
+            List<Entity> deliveryProducts = deliveriesProducts.getOrDefault(delivery.getId(), Collections.emptyList());
 
             for (Entity deliveryProduct : deliveryProducts) {
                 estimateProductDelivery(productAndCoverageProducts, new CoverageProductForDelivery(coverageDate, delivery,
@@ -418,6 +476,24 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         }
     }
 
+    private void collectDeliveriesProducts(final DataDefinition deliveryProductDD, final String deliveryFieldName,
+            final List<Long> deliveryIds, final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> deliveriesProducts) {
+        for (List<Long> deliveryIdsBatch : Lists.partition(deliveryIds, L_BATCH_SIZE)) {
+            List<Entity> deliveryProducts = deliveryProductDD.find()
+                    .createAlias(deliveryFieldName, deliveryFieldName, JoinType.INNER)
+                    .add(SearchRestrictions.in(deliveryFieldName + L_DOT + L_ID, deliveryIdsBatch))
+                    .addOrder(SearchOrders.asc(L_ID)).list().getEntities();
+
+            for (Entity deliveryProduct : deliveryProducts) {
+                if (productAndCoverageProducts.containsKey(deliveryProduct.getBelongsToField(L_PRODUCT).getId())) {
+                    deliveriesProducts.computeIfAbsent(deliveryProduct.getBelongsToField(deliveryFieldName).getId(),
+                            deliveryId -> Lists.newArrayList()).add(deliveryProduct);
+                }
+            }
+        }
+    }
+
     private void estimateProductDelivery(final Map<Long, Entity> productAndCoverageProducts,
             final CoverageProductForDelivery coverageProductForDelivery) {
         if (productAndCoverageProducts.containsKey(coverageProductForDelivery.getProduct().getId())) {
@@ -507,36 +583,60 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
     private void estimateProductLocationsInTime(final Entity materialRequirementCoverage,
             final Map<Long, Entity> productAndCoverageProducts, final List<Entity> coverageLocations, final Date actualDate) {
-        for (Entity coverageLocation : coverageLocations) {
-            Entity location = coverageLocation.getBelongsToField(CoverageLocationFields.LOCATION);
+        if (coverageLocations.isEmpty() || productAndCoverageProducts.isEmpty()) {
+            return;
+        }
 
-            String sql = "SELECT resource.product.id AS product, SUM(resource.quantity) AS quantity "
-                    + "FROM #materialFlowResources_resource AS resource "
-                    + "WHERE resource.location.id = :locationId GROUP BY resource.product.id";
+        List<Entity> locations = coverageLocations.stream()
+                .map(coverageLocation -> coverageLocation.getBelongsToField(CoverageLocationFields.LOCATION))
+                .collect(Collectors.toList());
 
-            List<Entity> resources = getResourceDD().find(sql).setParameter("locationId", location.getId()).list().getEntities();
+        Map<Long, Map<Long, BigDecimal>> locationsAndProductsQuantities = getLocationsAndProductsQuantities(locations);
 
-            Map<Long, BigDecimal> map = resources.stream().collect(
-                    Collectors.toMap(res -> (Long) res.getField("product"), res -> res.getDecimalField("quantity")));
+        for (Entry<Long, Entity> productAndCoverageProduct : productAndCoverageProducts.entrySet()) {
+            Entity addedCoverageProduct = productAndCoverageProduct.getValue();
 
-            for (Entry<Long, Entity> productAndCoverageProduct : productAndCoverageProducts.entrySet()) {
-                Entity addedCoverageProduct = productAndCoverageProduct.getValue();
+            List<Entity> coverageProductLoggings = Lists.newArrayList(addedCoverageProduct
+                    .getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
+            BigDecimal lQuantity = BigDecimalUtils.convertNullToZero(addedCoverageProduct
+                    .getDecimalField(CoverageProductFields.LOCATIONS_QUANTITY));
+
+            for (Entity location : locations) {
+                Map<Long, BigDecimal> productsQuantities = locationsAndProductsQuantities.getOrDefault(location.getId(),
+                        Collections.emptyMap());
 
-                BigDecimal locationsQuantity = BigDecimalUtils.convertNullToZero(map.get(productAndCoverageProduct.getKey()));
-                Entity coverageProductLogging = createCoverageProductLoggingForLocations(location, actualDate, locationsQuantity);
-                List<Entity> coverageProductLoggings = Lists.newArrayList(addedCoverageProduct
-                        .getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-                coverageProductLoggings.add(coverageProductLogging);
-                BigDecimal lQuantity = BigDecimalUtils.convertNullToZero(addedCoverageProduct
-                        .getDecimalField(CoverageProductFields.LOCATIONS_QUANTITY));
+                BigDecimal locationsQuantity = BigDecimalUtils.convertNullToZero(productsQuantities
+                        .get(productAndCoverageProduct.getKey()));
+
+                coverageProductLoggings.add(createCoverageProductLoggingForLocations(location, actualDate, locationsQuantity));
 
                 lQuantity = lQuantity.add(locationsQuantity, numberService.getMathContext());
-                addedCoverageProduct.setField(CoverageProductFields.LOCATIONS_QUANTITY, lQuantity);
-                addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
             }
+
+            addedCoverageProduct.setField(CoverageProductFields.LOCATIONS_QUANTITY, lQuantity);
+            addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
         }
     }
 
+    private Map<Long, Map<Long, BigDecimal>> getLocationsAndProductsQuantities(final List<Entity> locations) {
+        String sql = "SELECT resource.location.id AS location, resource.product.id AS product, SUM(resource.quantity) AS quantity "
+                + "FROM #materialFlowResources_resource AS resource "
+                + "WHERE resource.location.id IN (:locationIds) GROUP BY resource.location.id, resource.product.id";
+
+        List<Entity> resources = getResourceDD().find(sql)
+                .setParameterList("locationIds", locations.stream().map(Entity::getId).collect(Collectors.toList())).list()
+                .getEntities();
+
+        Map<Long, Map<Long, BigDecimal>> locationsAndProductsQuantities = Maps.newHashMap();
+
+        for (Entity resource : resources) {
+            locationsAndProductsQuantities.computeIfAbsent((Long) resource.getField("location"), location -> Maps.newHashMap())
+                    .put((Long) resource.getField("product"), resource.getDecimalField("quantity"));
+        }
+
+        return locationsAndProductsQuantities;
+    }
+
     private Entity createCoverageProductLoggingForLocations(final Entity location, final Date actualDate,
             final BigDecimal locationsQuantity) {
         Entity coverageProductLogging = orderSuppliesService.getCoverageProductLoggingDD().create();
@@ -34,6 +34,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.advancedGenealogy.constants.BatchFields;
@@ -83,6 +84,11 @@ public final class ProductionTrackingListenerServicePFTD {
 
     private static final String L_QUALITY_RATING = "qualityRating";
 
+    private static final String L_COSTS_FOR_ORDER_QUERY = "SELECT pr.id AS product, SUM(p.quantity) AS quantity, "
+            + "SUM(p.quantity * p.price) AS price "
+            + "FROM #materialFlowResources_position p JOIN p.document AS d join p.product AS pr "
+            + "WHERE d.order = :order_id AND d.type = :type %s GROUP BY d.order, d.type, pr.id";
+
     @Autowired
     private CostNormsForMaterialsService costNormsForMaterialsService;
 
@@ -137,18 +143,24 @@ public final class ProductionTrackingListenerServicePFTD {
         Multimap<Long, Entity> groupedRecordInProducts = productionTrackingDocumentsHelper
                 .fillFromBPCProductIn(trackingOperationProductInComponents, order, technologyOperationComponent, true);
 
-        if (!groupedRecordInProducts.isEmpty() && !checkIfProductsAvailableInStock(productionTracking, groupedRecordInProducts)) {
+        Map<Long, Entity> locations = getLocations(
+                Sets.union(groupedRecordOutProducts.keySet(), groupedRecordInProducts.keySet()));
+
+        if (!groupedRecordInProducts.isEmpty()
+                && !checkIfProductsAvailableInStock(productionTracking, groupedRecordInProducts, locations)) {
             return;
         }
 
-        String receiptOfProducts = parameterService.getParameter().getStringField(ParameterFieldsPC.RECEIPT_OF_PRODUCTS);
+        Entity parameter = parameterService.getParameter();
+
+        String receiptOfProducts = parameter.getStringField(ParameterFieldsPC.RECEIPT_OF_PRODUCTS);
 
         if (ReceiptOfProducts.ON_ACCEPTANCE_REGISTRATION_RECORD.getStringValue().equals(receiptOfProducts)
                 || ReceiptOfProducts.END_OF_THE_ORDER.getStringValue().equals(receiptOfProducts)) {
             for (Long warehouseId : groupedRecordOutProducts.keySet()) {
-                Entity locationTo = getLocationDD().get(warehouseId);
+                Entity locationTo = locations.get(warehouseId);
                 Entity inboundDocument = createOrUpdateInternalInboundDocumentForFinalProducts(locationTo, order,
-                        groupedRecordOutProducts.get(warehouseId), productionTracking.getBelongsToField(L_USER));
+                        groupedRecordOutProducts.get(warehouseId), productionTracking.getBelongsToField(L_USER), parameter);
 
                 if (Objects.nonNull(inboundDocument) && !inboundDocument.isValid()) {
                     for (ErrorMessage error : inboundDocument.getGlobalErrors()) {
@@ -164,13 +176,13 @@ public final class ProductionTrackingListenerServicePFTD {
 
             TransactionAspectSupport.currentTransactionStatus().flush();
         }
-        String releaseOfMaterials = parameterService.getParameter().getStringField(ParameterFieldsPC.RELEASE_OF_MATERIALS);
+        String releaseOfMaterials = parameter.getStringField(ParameterFieldsPC.RELEASE_OF_MATERIALS);
         if (ReleaseOfMaterials.ON_ACCEPTANCE_REGISTRATION_RECORD.getStringValue().equals(releaseOfMaterials)) {
 
             boolean errorsDisplayed = false;
 
             for (Long warehouseId : groupedRecordInProducts.keySet()) {
-                Entity locationFrom = getLocationDD().get(warehouseId);
+                Entity locationFrom = locations.get(warehouseId);
                 Entity outboundDocument = createInternalOutboundDocumentForComponents(locationFrom, order,
                         groupedRecordInProducts.get(warehouseId), productionTracking.getBelongsToField(L_USER));
 
@@ -196,16 +208,18 @@ public final class ProductionTrackingListenerServicePFTD {
                 return;
             }
 
-            updateCostsForOrder(order);
+            updateCostsForOrderProducts(order, groupedRecordInProducts.values().stream()
+                    .map(inProductRecord -> inProductRecord.getBelongsToField(TrackingOperationProductInComponentFields.PRODUCT)
+                            .getId())
+                    .collect(Collectors.toSet()));
         }
     }
 
-    private boolean checkIfProductsAvailableInStock(Entity productionTracking, Multimap<Long, Entity> groupedRecordInProducts) {
-        DataDefinition warehouseDD = dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER,
-                MaterialFlowConstants.MODEL_LOCATION);
+    private boolean checkIfProductsAvailableInStock(Entity productionTracking, Multimap<Long, Entity> groupedRecordInProducts,
+                                                    final Map<Long, Entity> locations) {
         for (Long warehouseId : groupedRecordInProducts.keySet()) {
             Collection<Entity> inProductsRecords = groupedRecordInProducts.get(warehouseId);
-            Entity warehouse = warehouseDD.get(warehouseId);
+            Entity warehouse = locations.get(warehouseId);
             List<Entity> products = inProductsRecords.stream()
                     .map(tpin -> tpin.getBelongsToField(TrackingOperationProductInComponentFields.PRODUCT))
                     .collect(Collectors.toList());
@@ -256,6 +270,8 @@ public final class ProductionTrackingListenerServicePFTD {
 
         DataDefinition positionDD = getPositionDD();
 
+        Map<Long, PossibleUnitConversions> unitConversionsByProduct = Maps.newHashMap();
+
         for (Entity inProductRecord : inProductsRecords) {
             List<Entity> usedBatches = inProductRecord.getHasManyField(TrackingOperationProductInComponentFields.USED_BATCHES);
 
@@ -263,12 +279,14 @@ public final class ProductionTrackingListenerServicePFTD {
 
             if (!inProductsWithoutDuplicates.contains(inProduct)) {
                 if (usedBatches.isEmpty()) {
-                    Entity position = preparePositionForInProduct(positionDD, inProductRecord, inProduct);
+                    Entity position = preparePositionForInProduct(positionDD, inProductRecord, inProduct,
+                            unitConversionsByProduct);
 
                     internalOutboundBuilder.addPosition(position);
                 } else {
                     for (Entity usedBatch : usedBatches) {
-                        Entity position = preparePositionForUsedBatch(positionDD, inProductRecord, inProduct, usedBatch);
+                        Entity position = preparePositionForUsedBatch(positionDD, inProductRecord, inProduct, usedBatch,
+                                unitConversionsByProduct);
 
                         internalOutboundBuilder.addPosition(position);
                     }
@@ -284,20 +302,18 @@ public final class ProductionTrackingListenerServicePFTD {
     }
 
     private Entity preparePositionForUsedBatch(final DataDefinition positionDD, final Entity inProductRecord,
-                                               final Entity inProduct, final Entity usedBatch) {
+                                               final Entity inProduct, final Entity usedBatch,
+                                               final Map<Long, PossibleUnitConversions> unitConversionsByProduct) {
         Entity position = positionDD.create();
 
         BigDecimal usedQuantity = usedBatch.getDecimalField(UsedBatchFields.QUANTITY);
         BigDecimal givenQuantity = productionTrackingService.calculateGivenQuantity(inProductRecord, usedQuantity)
                 .orElse(usedQuantity);
         BigDecimal conversion = BigDecimal.ONE;
-        String unit = inProduct.getStringField(ProductFields.UNIT);
         String givenUnit = inProductRecord.getStringField(TrackingOperationProductOutComponentFields.GIVEN_UNIT);
 
         if (Objects.nonNull(usedQuantity)) {
-            PossibleUnitConversions unitConversions = unitConversionService.getPossibleConversions(unit,
-                    searchCriteriaBuilder -> searchCriteriaBuilder
-                            .add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT, inProduct)));
+            PossibleUnitConversions unitConversions = getPossibleConversions(inProduct, unitConversionsByProduct);
 
             if (unitConversions.isDefinedFor(givenUnit)) {
                 conversion = numberService.setScaleWithDefaultMathContext(unitConversions.asUnitToConversionMap().get(givenUnit));
@@ -316,19 +332,16 @@ public final class ProductionTrackingListenerServicePFTD {
     }
 
     private Entity preparePositionForInProduct(final DataDefinition positionDD, final Entity inProductRecord,
-                                               final Entity inProduct) {
+                                               final Entity inProduct, final Map<Long, PossibleUnitConversions> unitConversionsByProduct) {
         Entity position = positionDD.create();
 
         BigDecimal usedQuantity = inProductRecord.getDecimalField(TrackingOperationProductInComponentFields.USED_QUANTITY);
         BigDecimal givenQuantity = inProductRecord.getDecimalField(TrackingOperationProductInComponentFields.GIVEN_QUANTITY);
         BigDecimal conversion = BigDecimal.ONE;
-        String unit = inProduct.getStringField(ProductFields.UNIT);
         String givenUnit = inProductRecord.getStringField(TrackingOperationProductOutComponentFields.GIVEN_UNIT);
 
         if (Objects.nonNull(usedQuantity) && Objects.nonNull(givenQuantity)) {
-            PossibleUnitConversions unitConversions = unitConversionService.getPossibleConversions(unit,
-                    searchCriteriaBuilder -> searchCriteriaBuilder
-                            .add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT, inProduct)));
+            PossibleUnitConversions unitConversions = getPossibleConversions(inProduct, unitConversionsByProduct);
 
             if (unitConversions.isDefinedFor(givenUnit)) {
                 conversion = numberService.setScaleWithDefaultMathContext(unitConversions.asUnitToConversionMap().get(givenUnit));
@@ -346,8 +359,10 @@ public final class ProductionTrackingListenerServicePFTD {
     }
 
     private Entity createOrUpdateInternalInboundDocumentForFinalProducts(final Entity locationTo, final Entity order,
-                                                                         final Collection<Entity> outProductsRecords, final Entity user) {
-        String receiptOfProducts = parameterService.getParameter().getStringField(ParameterFieldsPC.RECEIPT_OF_PRODUCTS);
+                                                                         final Collection<Entity> outProductsRecords, final Entity user,
+                                                                         final Entity parameter) {
+        String receiptOfProducts = parameter.getStringField(ParameterFieldsPC.RECEIPT_OF_PRODUCTS);
+        boolean isBasedOnNominalCost = isBasedOnNominalCost(parameter);
 
         List<Entity> finalProductRecord = null;
 
@@ -385,15 +400,15 @@ public final class ProductionTrackingListenerServicePFTD {
             if (Objects.nonNull(existingInboundDocument)) {
                 if (Objects.nonNull(finalProductRecord)) {
                     return updateInternalInboundDocumentForFinalProducts(order, existingInboundDocument,
-                            finalProductRecord, true);
+                            finalProductRecord, true, isBasedOnNominalCost);
                 } else {
                     return updateInternalInboundDocumentForFinalProducts(order, existingInboundDocument,
-                            intermediateRecords, false);
+                            intermediateRecords, false, isBasedOnNominalCost);
                 }
             } else {
                 if (Objects.nonNull(finalProductRecord)) {
                     Entity inboundForFinalProduct = createInternalInboundDocumentForFinalProducts(locationTo, order,
-                            finalProductRecord, user);
+                            finalProductRecord, isBasedOnNominalCost, user);
 
                     if (Objects.nonNull(inboundForFinalProduct) && !inboundForFinalProduct.isValid()
                             || intermediateRecords.isEmpty()) {
@@ -402,16 +417,20 @@ public final class ProductionTrackingListenerServicePFTD {
                 }
             }
 
-            return createInternalInboundDocumentForFinalProducts(locationTo, order, intermediateRecords, user);
+            return createInternalInboundDocumentForFinalProducts(locationTo, order, intermediateRecords, isBasedOnNominalCost,
+                    user);
         } else {
             return null;
         }
     }
 
     private Entity updateInternalInboundDocumentForFinalProducts(final Entity order, final Entity existingInboundDocument,
-                                                                 final Collection<Entity> outProductsRecords, boolean isFinalProduct) {
+                                                                 final Collection<Entity> outProductsRecords, boolean isFinalProduct,
+                                                                 final boolean isBasedOnNominalCost) {
         DataDefinition positionDD = getPositionDD();
 
+        Map<Long, PossibleUnitConversions> unitConversionsByProduct = Maps.newHashMap();
+
         List<Entity> positions = Lists.newArrayList(existingInboundDocument.getHasManyField(DocumentFields.POSITIONS));
 
         for (Entity outProductRecord : outProductsRecords) {
@@ -462,12 +481,9 @@ public final class ProductionTrackingListenerServicePFTD {
                 position.setField(PositionFields.QUANTITY, usedQuantity.get());
 
                 BigDecimal conversion = BigDecimal.ONE;
-                String unit = outProduct.getStringField(ProductFields.UNIT);
 
                 if (givenQuantity.isPresent()) {
-                    PossibleUnitConversions unitConversions = unitConversionService.getPossibleConversions(unit,
-                            searchCriteriaBuilder -> searchCriteriaBuilder
-                                    .add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT, outProduct)));
+                    PossibleUnitConversions unitConversions = getPossibleConversions(outProduct, unitConversionsByProduct);
 
                     if (unitConversions.isDefinedFor(givenUnit.get())) {
                         conversion = numberService
@@ -480,10 +496,8 @@ public final class ProductionTrackingListenerServicePFTD {
                 position.setField(PositionFields.GIVEN_UNIT, givenUnit.get());
                 position.setField(PositionFields.CONVERSION, conversion);
                 position.setField(PositionFields.PRODUCTION_DATE, new Date());
-                String priceBasedOn = parameterService.getParameter().getStringField(ParameterFieldsPC.PRICE_BASED_ON);
-                boolean isNominalProductCost = priceBasedOn != null
-                        && priceBasedOn.equals(PriceBasedOn.NOMINAL_PRODUCT_COST.getStringValue());
-                if (isNominalProductCost) {
+
+                if (isBasedOnNominalCost) {
                     position.setField(PositionFields.PRICE, getNominalCost(outProduct));
                 }
                 Entity batch = productionTracking.getBelongsToField(ProductionTrackingFields.BATCH);
@@ -527,9 +541,11 @@ public final class ProductionTrackingListenerServicePFTD {
     private void fillAttributes(final Entity outProductRecord, final Entity position) {
         List<Entity> attributes = Lists.newArrayList();
 
+        DataDefinition positionAttributeValueDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_POSITION_ATTRIBUTE_VALUE);
+
         outProductRecord.getHasManyField(TrackingOperationProductOutComponentFields.PROD_OUT_RESOURCE_ATTR_VALS).forEach(aVal -> {
-            Entity docPositionAtrrVal = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
-                    MaterialFlowResourcesConstants.MODEL_POSITION_ATTRIBUTE_VALUE).create();
+            Entity docPositionAtrrVal = positionAttributeValueDD.create();
             docPositionAtrrVal.setField(PositionAttributeValueFields.ATTRIBUTE,
                     aVal.getBelongsToField(ProdOutResourceAttrValFields.ATTRIBUTE).getId());
 
@@ -606,9 +622,7 @@ public final class ProductionTrackingListenerServicePFTD {
 
     public Entity createInternalInboundDocumentForFinalProducts(final Entity locationTo, final Entity order,
                                                                 final Collection<Entity> outProductsRecords, Entity user) {
-        String priceBasedOn = parameterService.getParameter().getStringField(ParameterFieldsPC.PRICE_BASED_ON);
-        boolean isNominalProductCost = priceBasedOn != null
-                && priceBasedOn.equals(PriceBasedOn.NOMINAL_PRODUCT_COST.getStringValue());
+        boolean isNominalProductCost = isBasedOnNominalCost(parameterService.getParameter());
         return createInternalInboundDocumentForFinalProducts(locationTo, order, outProductsRecords, isNominalProductCost, user);
     }
 
@@ -622,6 +636,8 @@ public final class ProductionTrackingListenerServicePFTD {
 
         Entity productionTracking = null;
 
+        Map<Long, PossibleUnitConversions> unitConversionsByProduct = Maps.newHashMap();
+
         for (Entity outProductRecord : outProductsRecords) {
             Entity outProduct = outProductRecord.getBelongsToField(TrackingOperationProductOutComponentFields.PRODUCT);
 
@@ -640,13 +656,10 @@ public final class ProductionTrackingListenerServicePFTD {
             BigDecimal givenQuantity = outProductRecord
                     .getDecimalField(TrackingOperationProductOutComponentFields.GIVEN_QUANTITY);
             BigDecimal conversion = BigDecimal.ONE;
-            String unit = outProduct.getStringField(ProductFields.UNIT);
             String givenUnit = outProductRecord.getStringField(TrackingOperationProductOutComponentFields.GIVEN_UNIT);
 
             if (Objects.nonNull(usedQuantity) && Objects.nonNull(givenQuantity)) {
-                PossibleUnitConversions unitConversions = unitConversionService.getPossibleConversions(unit,
-                        searchCriteriaBuilder -> searchCriteriaBuilder
-                                .add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT, outProduct)));
+                PossibleUnitConversions unitConversions = getPossibleConversions(outProduct, unitConversionsByProduct);
 
                 if (unitConversions.isDefinedFor(givenUnit)) {
                     conversion = numberService
@@ -713,6 +726,19 @@ public final class ProductionTrackingListenerServicePFTD {
         return internalInboundBuilder.buildWithEntityRuntimeException();
     }
 
+    private boolean isBasedOnNominalCost(final Entity parameter) {
+        return PriceBasedOn.NOMINAL_PRODUCT_COST.getStringValue()
+                .equals(parameter.getStringField(ParameterFieldsPC.PRICE_BASED_ON));
+    }
+
+    private PossibleUnitConversions getPossibleConversions(final Entity product,
+                                                           final Map<Long, PossibleUnitConversions> unitConversionsByProduct) {
+        return unitConversionsByProduct.computeIfAbsent(product.getId(),
+                productId -> unitConversionService.getPossibleConversions(product.getStringField(ProductFields.UNIT),
+                        searchCriteriaBuilder -> searchCriteriaBuilder
+                                .add(SearchRestrictions.belongsTo(UnitConversionItemFieldsB.PRODUCT, product))));
+    }
+
     private BigDecimal getNominalCost(final Entity outProduct) {
         BigDecimal nominalCost = BigDecimalUtils.convertNullToZero(outProduct.getDecimalField("nominalCost"));
         Entity currency = outProduct.getBelongsToField("nominalCostCurrency");
@@ -730,13 +756,30 @@ public final class ProductionTrackingListenerServicePFTD {
     }
 
     public void updateCostsForOrder(final Entity order) {
-        DataDefinition positionDD = getPositionDD();
+        SearchQueryBuilder searchQueryBuilder = getPositionDD().find(String.format(L_COSTS_FOR_ORDER_QUERY, StringUtils.EMPTY));
+
+        updateCostsForOrder(order, searchQueryBuilder);
+    }
+
+    /**
+     * Updates costs for order only for given products, e.g. the ones issued by outbound documents of a single production
+     * tracking. Costs of other products of the order are left as they are, use {@link #updateCostsForOrder(Entity)} to
+     * recalculate all of them.
+     */
+    public void updateCostsForOrderProducts(final Entity order, final Set<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        SearchQueryBuilder searchQueryBuilder = getPositionDD()
+                .find(String.format(L_COSTS_FOR_ORDER_QUERY, "AND pr.id IN (:productIds)"));
 
-        SearchQueryBuilder searchQueryBuilder = positionDD
-                .find("SELECT pr.id AS product, SUM(p.quantity) AS quantity, SUM(p.quantity * p.price) AS price "
-                        + "FROM #materialFlowResources_position p JOIN p.document AS d join p.product AS pr "
-                        + "WHERE d.order = :order_id AND d.type = :type " + "GROUP BY d.order, d.type, pr.id");
+        searchQueryBuilder.setParameterList("productIds", productIds);
 
+        updateCostsForOrder(order, searchQueryBuilder);
+    }
+
+    private void updateCostsForOrder(final Entity order, final SearchQueryBuilder searchQueryBuilder) {
         searchQueryBuilder.setLong("order_id", order.getId());
         searchQueryBuilder.setString("type", DocumentType.INTERNAL_OUTBOUND.getStringValue());
 
@@ -758,6 +801,17 @@ public final class ProductionTrackingListenerServicePFTD {
         order.setField(OrderFieldsCNFM.TECHNOLOGY_INST_OPER_PRODUCT_IN_COMPS, updatedCosts);
     }
 
+    private Map<Long, Entity> getLocations(final Set<Long> locationIds) {
+        Map<Long, Entity> locations = Maps.newHashMap();
+
+        if (!locationIds.isEmpty()) {
+            getLocationDD().find().add(SearchRestrictions.in("id", locationIds)).list().getEntities()
+                    .forEach(location -> locations.put(location.getId(), location));
+        }
+
+        return locations;
+    }
+
     private DataDefinition getDocumentDD() {
         return dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_DOCUMENT);
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.productionCounting.states.listener;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.ProductFields;
@@ -59,13 +60,17 @@ import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.validators.ErrorMessage;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import static com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingFields.ORDER;
 import static com.qcadoo.mes.orders.constants.OrderFields.STATE;
@@ -81,6 +86,10 @@ public final class ProductionTrackingListenerService {
 
     private static final String L_COUNT = "count";
 
+    private static final String L_ID = "id";
+
+    private static final String L_DOT_ID = ".id";
+
     @Autowired
     private NumberService numberService;
 
@@ -108,6 +117,9 @@ public final class ProductionTrackingListenerService {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     public void onChangeFromDraftToAny(final Entity productionTracking) {
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAILS, false);
         productionTracking.setField(ProductionTrackingFields.LAST_STATE_CHANGE_FAIL_CAUSE, null);
@@ -154,6 +166,7 @@ public final class ProductionTrackingListenerService {
     }
 
     public void onAccept(final Entity productionTracking) {
+        lockProductionCountings(productionTracking);
         updateBasicProductionCounting(productionTracking, new Addition());
         updateProductionCountingQuantity(productionTracking, new Addition());
         setOrderDoneAndWastesQuantity(productionTracking, new Addition());
@@ -161,6 +174,7 @@ public final class ProductionTrackingListenerService {
     }
 
     public void onChangeFromAcceptedToDeclined(final Entity productionTracking) {
+        lockProductionCountings(productionTracking);
         updateBasicProductionCounting(productionTracking, new Substraction());
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
         fillOrderReportedQuantity(productionTracking, new Substraction());
@@ -377,9 +391,14 @@ public final class ProductionTrackingListenerService {
         final List<Entity> trackingOperationProductOutComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
 
+        final Map<Long, List<Entity>> inProductionCountingQuantities = getInProductionCountingQuantities(order,
+                technologyOperationComponent, isForEach, getProductIds(trackingOperationProductInComponents));
+        final Map<Long, Entity> outProductionCountingQuantities = getOutProductionCountingQuantities(order,
+                technologyOperationComponent, isForEach, getProductIds(trackingOperationProductOutComponents));
+
         trackingOperationProductInComponents.forEach(trackingOperationProductInComponent -> {
-            List<Entity> productionCountingQuantities = getInProductionCountingQuantities(trackingOperationProductInComponent,
-                    order, technologyOperationComponent, isForEach);
+            List<Entity> productionCountingQuantities = inProductionCountingQuantities
+                    .getOrDefault(getProductId(trackingOperationProductInComponent), Collections.emptyList());
 
             if (productionCountingQuantities.isEmpty()) {
                 return;
@@ -426,8 +445,8 @@ public final class ProductionTrackingListenerService {
 
         trackingOperationProductOutComponents.forEach(trackingOperationProductOutComponent -> {
 
-            Entity productionCountingQuantity = getOutProductionCountingQuantity(trackingOperationProductOutComponent, order,
-                    technologyOperationComponent, isForEach);
+            Entity productionCountingQuantity = outProductionCountingQuantities
+                    .get(getProductId(trackingOperationProductOutComponent));
             if (productionCountingQuantity == null) {
                 return;
             }
@@ -455,9 +474,14 @@ public final class ProductionTrackingListenerService {
         final List<Entity> trackingOperationProductOutComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
 
+        final Map<Long, List<Entity>> inProductionCountingQuantities = getInProductionCountingQuantities(order,
+                technologyOperationComponent, isForEach, getProductIds(trackingOperationProductInComponents));
+        final Map<Long, Entity> outProductionCountingQuantities = getOutProductionCountingQuantities(order,
+                technologyOperationComponent, isForEach, getProductIds(trackingOperationProductOutComponents));
+
         trackingOperationProductInComponents.forEach(trackingOperationProductInComponent -> {
-            List<Entity> productionCountingQuantities = getInProductionCountingQuantities(trackingOperationProductInComponent,
-                    order, technologyOperationComponent, isForEach);
+            List<Entity> productionCountingQuantities = inProductionCountingQuantities
+                    .getOrDefault(getProductId(trackingOperationProductInComponent), Collections.emptyList());
 
             if (productionCountingQuantities.isEmpty()) {
                 return;
@@ -523,8 +547,8 @@ public final class ProductionTrackingListenerService {
 
         trackingOperationProductOutComponents.forEach(trackingOperationProductOutComponent -> {
 
-            Entity productionCountingQuantity = getOutProductionCountingQuantity(trackingOperationProductOutComponent, order,
-                    technologyOperationComponent, isForEach);
+            Entity productionCountingQuantity = outProductionCountingQuantities
+                    .get(getProductId(trackingOperationProductOutComponent));
             if (productionCountingQuantity == null) {
                 return;
             }
@@ -547,8 +571,13 @@ public final class ProductionTrackingListenerService {
         final List<Entity> trackingOperationProductOutComponents = productionTracking
                 .getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS);
 
+        final Set<Long> productIds = getProductIds(trackingOperationProductInComponents);
+        productIds.addAll(getProductIds(trackingOperationProductOutComponents));
+
+        final Map<Long, Entity> basicProductionCountings = getBasicProductionCountings(order, productIds);
+
         trackingOperationProductInComponents.forEach(trackingOperationProductInComponent -> {
-            Entity basicProductionCounting = getBasicProductionCounting(trackingOperationProductInComponent, order);
+            Entity basicProductionCounting = basicProductionCountings.get(getProductId(trackingOperationProductInComponent));
 
             if (basicProductionCounting == null) {
                 return;
@@ -564,7 +593,7 @@ public final class ProductionTrackingListenerService {
         });
 
         trackingOperationProductOutComponents.forEach(trackingOperationProductOutComponent -> {
-            Entity basicProductionCounting = getBasicProductionCounting(trackingOperationProductOutComponent, order);
+            Entity basicProductionCounting = basicProductionCountings.get(getProductId(trackingOperationProductOutComponent));
 
             if (basicProductionCounting == null) {
                 return;
@@ -623,17 +652,60 @@ public final class ProductionTrackingListenerService {
         }
     }
 
-    private Entity getBasicProductionCounting(final Entity trackingOperationProductComponent, final Entity order) {
-        Entity product = trackingOperationProductComponent.getBelongsToField(L_PRODUCT);
+    private void lockProductionCountings(final Entity productionTracking) {
+        Entity order = productionTracking.getBelongsToField(ProductionTrackingFields.ORDER);
+
+        Set<Long> productIds = getProductIds(
+                productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_IN_COMPONENTS));
+        productIds.addAll(getProductIds(
+                productionTracking.getHasManyField(ProductionTrackingFields.TRACKING_OPERATION_PRODUCT_OUT_COMPONENTS)));
+
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("orderId", order.getId());
+        params.put("productIds", productIds);
+
+        jdbcTemplate.queryForList("SELECT id FROM basicproductioncounting_basicproductioncounting "
+                + "WHERE order_id = :orderId AND product_id IN (:productIds) ORDER BY id FOR UPDATE", params, Long.class);
+        jdbcTemplate.queryForList("SELECT id FROM basicproductioncounting_productioncountingquantity "
+                + "WHERE order_id = :orderId AND product_id IN (:productIds) ORDER BY id FOR UPDATE", params, Long.class);
+    }
+
+    private Set<Long> getProductIds(final List<Entity> trackingOperationProductComponents) {
+        return trackingOperationProductComponents.stream().map(this::getProductId).collect(Collectors.toSet());
+    }
+
+    private Long getProductId(final Entity trackingOperationProductComponent) {
+        return trackingOperationProductComponent.getBelongsToField(L_PRODUCT).getId();
+    }
+
+    private Map<Long, Entity> getBasicProductionCountings(final Entity order, final Set<Long> productIds) {
+        Map<Long, Entity> basicProductionCountings = Maps.newHashMap();
+
+        if (productIds.isEmpty()) {
+            return basicProductionCountings;
+        }
+
+        order.getHasManyField(OrderFieldsBPC.BASIC_PRODUCTION_COUNTINGS).find()
+                .add(SearchRestrictions.in(BasicProductionCountingFields.PRODUCT + L_DOT_ID, productIds)).addOrder(asc(L_ID))
+                .list().getEntities().forEach(basicProductionCounting -> basicProductionCountings.putIfAbsent(
+                        basicProductionCounting.getBelongsToField(BasicProductionCountingFields.PRODUCT).getId(),
+                        basicProductionCounting));
 
-        return order.getHasManyField(OrderFieldsBPC.BASIC_PRODUCTION_COUNTINGS).find()
-                .add(SearchRestrictions.belongsTo(BasicProductionCountingFields.PRODUCT, product)).setMaxResults(1)
-                .uniqueResult();
+        return basicProductionCountings;
     }
 
-    private List<Entity> getInProductionCountingQuantities(Entity trackingOperationProductComponent, Entity order,
-            Entity technologyOperationComponent, boolean isForEach) {
-        Entity product = trackingOperationProductComponent.getBelongsToField(L_PRODUCT);
+    private Map<Long, List<Entity>> getInProductionCountingQuantities(final Entity order,
+            final Entity technologyOperationComponent, final boolean isForEach, final Set<Long> productIds) {
+        Map<Long, List<Entity>> productionCountingQuantities = Maps.newHashMap();
+
+        if (productIds.isEmpty()) {
+            return productionCountingQuantities;
+        }
 
         SearchCriteriaBuilder scb = order
                 .getHasManyField(OrderFieldsBPC.PRODUCTION_COUNTING_QUANTITIES)
@@ -642,35 +714,52 @@ public final class ProductionTrackingListenerService {
                         ProductionCountingQuantityRole.USED.getStringValue()))
                 .add(SearchRestrictions.eq(ProductionCountingQuantityFields.TYPE_OF_MATERIAL,
                         ProductionCountingQuantityTypeOfMaterial.COMPONENT.getStringValue()))
-                .add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.PRODUCT, product));
+                .add(SearchRestrictions.in(ProductionCountingQuantityFields.PRODUCT + L_DOT_ID, productIds));
 
         if (isForEach && Objects.nonNull(technologyOperationComponent)) {
-            Entity toc = technologyOperationComponent.getDataDefinition().get(technologyOperationComponent.getId());
-            scb = scb.add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT, toc));
+            scb = scb.add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT,
+                    technologyOperationComponent));
         }
 
-        return scb.list().getEntities();
+        scb.addOrder(asc(L_ID)).list().getEntities()
+                .forEach(productionCountingQuantity -> productionCountingQuantities
+                        .computeIfAbsent(productionCountingQuantity.getBelongsToField(ProductionCountingQuantityFields.PRODUCT)
+                                .getId(), productId -> Lists.newArrayList())
+                        .add(productionCountingQuantity));
 
+        return productionCountingQuantities;
     }
 
-    private Entity getOutProductionCountingQuantity(Entity trackingOperationProductOutComponent, Entity order,
-            Entity technologyOperationComponent, boolean isForEach) {
-        Entity product = trackingOperationProductOutComponent.getBelongsToField(L_PRODUCT);
+    private Map<Long, Entity> getOutProductionCountingQuantities(final Entity order, final Entity technologyOperationComponent,
+            final boolean isForEach, final Set<Long> productIds) {
+        Map<Long, Entity> productionCountingQuantities = Maps.newHashMap();
+
+        if (productIds.isEmpty()) {
+            return productionCountingQuantities;
+        }
 
         SearchCriteriaBuilder scb = order
                 .getHasManyField(OrderFieldsBPC.PRODUCTION_COUNTING_QUANTITIES)
                 .find()
                 .add(SearchRestrictions.eq(ProductionCountingQuantityFields.ROLE,
                         ProductionCountingQuantityRole.PRODUCED.getStringValue()))
-                .add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.PRODUCT, product));
+                .add(SearchRestrictions.in(ProductionCountingQuantityFields.PRODUCT + L_DOT_ID, productIds));
+
         if (isForEach && Objects.nonNull(technologyOperationComponent)) {
-            Entity toc = technologyOperationComponent.getDataDefinition().get(technologyOperationComponent.getId());
-            scb = scb.add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT, toc));
+            scb = scb.add(SearchRestrictions.belongsTo(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT,
+                    technologyOperationComponent));
         }
-        return scb.setMaxResults(1).uniqueResult();
+
+        scb.addOrder(asc(L_ID)).list().getEntities()
+                .forEach(productionCountingQuantity -> productionCountingQuantities.putIfAbsent(
+                        productionCountingQuantity.getBelongsToField(ProductionCountingQuantityFields.PRODUCT).getId(),
+                        productionCountingQuantity));
+
+        return productionCountingQuantities;
     }
 
     public void onCorrected(final Entity productionTracking) {
+        lockProductionCountings(productionTracking);
         updateBasicProductionCounting(productionTracking, new Substraction());
         updateProductionCountingQuantitySubtraction(productionTracking, new Substraction());
         setOrderDoneAndWastesQuantity(productionTracking, new Substraction());
@@ -51,10 +51,10 @@ class ProductionBalanceRepository {
                 "(SELECT pcq.order_id as orderId, wastePt.order_id AS wastePtOrderId, COALESCE(SUM(wasteTopoc.usedquantity), 0) AS producedWastes ");
         query.append("FROM basicproductioncounting_productioncountingquantity pcq ");
         query.append(
-                "LEFT JOIN productioncounting_trackingoperationproductoutcomponent wasteTopoc ON  wasteTopoc.product_id = pcq.product_id ");
+                "JOIN productioncounting_productiontracking wastePt ON wastePt.order_id = pcq.order_id AND wastePt.state = '02accepted' ");
         query.append(
-                "LEFT JOIN productioncounting_productiontracking wastePt ON wasteTopoc.productiontracking_id = wastePt.id AND wastePt.state = '02accepted' ");
-        query.append("WHERE pcq.typeofmaterial = '04waste' AND pcq.role = '02produced' ");
+                "JOIN productioncounting_trackingoperationproductoutcomponent wasteTopoc ON wasteTopoc.productiontracking_id = wastePt.id AND wasteTopoc.product_id = pcq.product_id ");
+        query.append("WHERE pcq.order_id IN (:ordersIds) AND pcq.typeofmaterial = '04waste' AND pcq.role = '02produced' ");
         query.append(
                 "GROUP BY orderId, wastePtOrderId) prodWaste ON prodWaste.orderId = o.id AND prodWaste.wastePtOrderId = o.id ");
         appendWhereClause(query);
@@ -4,8 +4,15 @@ import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import javax.annotation.PreDestroy;
+
 import org.apache.poi.hssf.usermodel.HSSFCell;
 import org.apache.poi.hssf.usermodel.HSSFCellStyle;
 import org.apache.poi.hssf.usermodel.HSSFRow;
@@ -21,6 +28,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.basic.constants.CurrencyFields;
 import com.qcadoo.mes.basic.util.CurrencyService;
@@ -52,6 +60,11 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
     @Autowired
     private CurrencyService currencyService;
 
+    private static final int QUERIES_THREADS = 4;
+
+    private final ExecutorService queriesExecutor = Executors.newFixedThreadPool(QUERIES_THREADS,
+            new ThreadFactoryBuilder().setNameFormat("production-balance-queries-%d").setDaemon(true).build());
+
     private static final List<String> PRODUCED_QUANTITIES_HEADERS = Lists.newArrayList("orderNumber", "productNumber",
             "productName", "plannedQuantity", "producedQuantity", "wastesQuantity", "producedWastes", "deviation", "productUnit");
 
@@ -86,24 +99,35 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
     @Override
     protected void addExtraSheets(final HSSFWorkbook workbook, Entity entity, Locale locale) {
         List<Long> ordersIds = getOrdersIds(entity);
-        List<MaterialCost> materialCosts = productionBalanceRepository.getMaterialCosts(entity, ordersIds);
+
+        CompletableFuture<List<MaterialCost>> materialCostsFuture = runQuery(
+                () -> productionBalanceRepository.getMaterialCosts(entity, ordersIds));
+        CompletableFuture<List<LaborTime>> laborTimeFuture = runQuery(() -> productionBalanceRepository.getLaborTime(ordersIds));
+        CompletableFuture<List<LaborTimeDetails>> laborTimeDetailsFuture = runQuery(
+                () -> productionBalanceRepository.getLaborTimeDetails(entity, ordersIds));
+        CompletableFuture<List<PieceworkDetails>> pieceworkDetailsFuture = runQuery(
+                () -> productionBalanceRepository.getPieceworkDetails(ordersIds));
+        CompletableFuture<List<Stoppage>> stoppagesFuture = runQuery(() -> productionBalanceRepository.getStoppages(ordersIds));
+        CompletableFuture<List<ProductionCost>> productionCostsFuture = runQuery(
+                () -> productionBalanceRepository.getProductionCosts(entity, ordersIds));
+
+        List<MaterialCost> materialCosts = getQueryResult(materialCostsFuture);
         recalculateMaterialCostsWithCurrencies(materialCosts);
         createMaterialCostsSheet(materialCosts, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts", locale)),
                 locale);
-        createLaborTimeSheet(createSheet(workbook, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
-        List<LaborTimeDetails> laborTimeDetailsList = productionBalanceRepository.getLaborTimeDetails(entity, ordersIds);
-        createLaborTimeDetailsSheet(laborTimeDetailsList, createSheet(workbook,
+        createLaborTimeSheet(getQueryResult(laborTimeFuture),
+                createSheet(workbook, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)), locale);
+        createLaborTimeDetailsSheet(getQueryResult(laborTimeDetailsFuture), createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails", locale)),
                 locale);
-        createPieceworkSheet(createSheet(workbook, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)),
-                ordersIds, locale);
-        createStoppagesSheet(
+        createPieceworkSheet(getQueryResult(pieceworkDetailsFuture),
+                createSheet(workbook, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)), locale);
+        createStoppagesSheet(getQueryResult(stoppagesFuture),
                 createSheet(workbook,
                         translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages", locale)),
-                ordersIds, locale);
-        List<ProductionCost> productionCosts = productionBalanceRepository.getProductionCosts(entity, ordersIds);
+                locale);
+        List<ProductionCost> productionCosts = getQueryResult(productionCostsFuture);
         createProductionCostsSheet(productionCosts, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.productionCosts", locale)),
                 locale);
@@ -122,6 +146,27 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 locale);
     }
 
+    private <T> CompletableFuture<T> runQuery(final Supplier<T> query) {
+        return CompletableFuture.supplyAsync(query, queriesExecutor);
+    }
+
+    private <T> T getQueryResult(final CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException("Problem with loading productionBalance report data", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdownQueriesExecutor() {
+        queriesExecutor.shutdownNow();
+    }
+
     private void recalculateMaterialCostsWithCurrencies(List<MaterialCost> materialCosts) {
         Entity currency = currencyService.getCurrentCurrency();
         for (MaterialCost materialCost : materialCosts) {
@@ -254,7 +299,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createPieceworkSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
+    private void createPieceworkSheet(List<PieceworkDetails> pieceworkDetailsList, HSSFSheet sheet, Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
         final int rowOffset = 1;
@@ -267,7 +312,6 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 translationService.translate(PieceworkSheetConstants.TOTAL_EXECUTED_OPERATION_CYCLES, locale), 2
         );
 
-        List<PieceworkDetails> pieceworkDetailsList = productionBalanceRepository.getPieceworkDetails(ordersIds);
         int rowCounter = 0;
         for (PieceworkDetails pieceworkDetails : pieceworkDetailsList) {
             row = sheet.createRow(rowOffset + rowCounter);
@@ -281,7 +325,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createStoppagesSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
+    private void createStoppagesSheet(List<Stoppage> stoppages, HSSFSheet sheet, Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
         final int rowOffset = 1;
@@ -329,7 +373,6 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.stoppages.worker", locale),
                 11);
 
-        List<Stoppage> stoppages = productionBalanceRepository.getStoppages(ordersIds);
         int rowCounter = 0;
         for (Stoppage stoppage : stoppages) {
             row = sheet.createRow(rowOffset + rowCounter);
@@ -355,7 +398,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         }
     }
 
-    private void createLaborTimeSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
+    private void createLaborTimeSheet(List<LaborTime> laborTimeList, HSSFSheet sheet, Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
         final int rowOffset = 1;
@@ -378,7 +421,6 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.LABOR_TIME, locale), 7
         );
 
-        List<LaborTime> laborTimeList = productionBalanceRepository.getLaborTime(ordersIds);
         int rowCounter = 0;
         for (LaborTime laborTime : laborTimeList) {
             row = sheet.createRow(rowOffset + rowCounter);
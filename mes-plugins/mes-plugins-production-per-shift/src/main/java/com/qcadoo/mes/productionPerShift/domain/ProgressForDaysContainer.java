@@ -1,12 +1,14 @@
 package com.qcadoo.mes.productionPerShift.domain;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import org.joda.time.DateTime;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
 public class ProgressForDaysContainer {
 
@@ -34,6 +36,8 @@ public class ProgressForDaysContainer {
 
     private BigDecimal alreadyRegisteredQuantity = BigDecimal.ZERO;
 
+    private Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = Maps.newHashMap();
+
     public void addError(ErrorMessage errorMessage) {
         errors.add(errorMessage);
     }
@@ -126,6 +130,14 @@ public class ProgressForDaysContainer {
         this.plannedQuantity = plannedQuantity;
     }
 
+    public Map<DailyProgressKey, Entity> getDailyProgressesWithTrackingRecords() {
+        return dailyProgressesWithTrackingRecords;
+    }
+
+    public void setDailyProgressesWithTrackingRecords(Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords) {
+        this.dailyProgressesWithTrackingRecords = dailyProgressesWithTrackingRecords;
+    }
+
     public boolean isPlanForOrderCompleted() {
         return planForOrderCompleted;
     }
@@ -1,6 +1,7 @@
 package com.qcadoo.mes.productionPerShift.services;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.utils.DateUtils;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.ShiftExceptionService;
@@ -51,8 +52,6 @@ public abstract class PpsBaseAlgorithmService {
     @Autowired
     private ParameterService parameterService;
 
-    private Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords;
-
     public void generateProgressForDays(ProgressForDaysContainer progressForDaysContainer, Entity productionPerShift) {
         Entity order = productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER);
         if (progressForDaysContainer.getOrder() != null) {
@@ -127,12 +126,12 @@ public abstract class PpsBaseAlgorithmService {
         DailyProgressContainer dailyProgressContainer = new DailyProgressContainer();
         List<Entity> dailyProgressWithShifts = Lists.newLinkedList();
 
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = progressForDaysContainer
+                .getDailyProgressesWithTrackingRecords();
+
         for (Shift shift : shifts) {
-            Entity dailyProgress = null;
-            if (dailyProgressesWithTrackingRecords != null) {
-                DailyProgressKey key = new DailyProgressKey(shift.getId(), dateOfDay);
-                dailyProgress = dailyProgressesWithTrackingRecords.get(key);
-            }
+            DailyProgressKey key = new DailyProgressKey(shift.getId(), dateOfDay);
+            Entity dailyProgress = dailyProgressesWithTrackingRecords.get(key);
             if (dailyProgress != null) {
                 BigDecimal producedQuantity = dailyProgress.getDecimalField(DailyProgressFields.QUANTITY);
                 progressForDaysContainer.setAlreadyRegisteredQuantity(progressForDaysContainer.getAlreadyRegisteredQuantity()
@@ -208,14 +207,16 @@ public abstract class PpsBaseAlgorithmService {
             final Entity pps, BigDecimal plannedQuantity) {
         BigDecimal alreadyRegisteredQuantity = progressForDaysContainer.getAlreadyRegisteredQuantity();
         if (pps != null) {
-            dailyProgressesWithTrackingRecords = dailyProgressService.getDailyProgressesWithTrackingRecords(pps);
+            Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = dailyProgressService
+                    .getDailyProgressesWithTrackingRecords(pps);
 
             for (Map.Entry<DailyProgressKey, Entity> entry : dailyProgressesWithTrackingRecords.entrySet()) {
                 alreadyRegisteredQuantity = alreadyRegisteredQuantity.add(entry.getKey().getQuantity());
             }
             progressForDaysContainer.setAlreadyRegisteredQuantity(alreadyRegisteredQuantity);
+            progressForDaysContainer.setDailyProgressesWithTrackingRecords(dailyProgressesWithTrackingRecords);
         } else {
-            dailyProgressesWithTrackingRecords = null;
+            progressForDaysContainer.setDailyProgressesWithTrackingRecords(Maps.newHashMap());
         }
         progressForDaysContainer
                 .setPlannedQuantity(plannedQuantity.subtract(alreadyRegisteredQuantity, numberService.getMathContext()));
@@ -0,0 +1,244 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productionPerShift.services;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.ShiftExceptionService;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+import com.qcadoo.mes.orders.constants.OrderFields;
+import com.qcadoo.mes.productionPerShift.constants.DailyProgressFields;
+import com.qcadoo.mes.productionPerShift.constants.ProductionPerShiftFields;
+import com.qcadoo.mes.productionPerShift.domain.DailyProgressKey;
+import com.qcadoo.mes.productionPerShift.domain.ProgressForDaysContainer;
+import com.qcadoo.mes.productionPerShift.domain.ShiftEfficiencyCalculationHolder;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+public class PpsBaseAlgorithmServiceTest {
+
+    private static final int L_PPS_COUNT = 8;
+
+    private static final int L_ROUNDS = 20;
+
+    private static final Long L_SHIFT_ID = 1L;
+
+    private static final BigDecimal L_SHIFT_EFFICIENCY = BigDecimal.TEN;
+
+    private static final DateTime L_ORDER_START_DATE = new DateTime(2020, 1, 6, 0, 0);
+
+    private PpsBaseAlgorithmService ppsBaseAlgorithmService;
+
+    @Mock
+    private DailyProgressService dailyProgressService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition dailyProgressDD;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private ShiftExceptionService shiftExceptionService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private Entity parameter, productionLine, shiftEntity;
+
+    @Mock
+    private Shift shift;
+
+    private List<Entity> productionPerShifts;
+
+    private ExecutorService executorService;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        ppsBaseAlgorithmService = new PpsBaseAlgorithmService() {
+
+            @Override
+            protected ShiftEfficiencyCalculationHolder calculateShiftEfficiency(
+                    final ProgressForDaysContainer progressForDaysContainer, final Entity productionPerShift, final Shift shift,
+                    final Entity order, final DateTimeRange range, final BigDecimal shiftEfficiency,
+                    final int progressForDayQuantity, final boolean allowIncompleteUnits) {
+                ShiftEfficiencyCalculationHolder calculationHolder = new ShiftEfficiencyCalculationHolder();
+
+                calculationHolder.setShiftEfficiency(shiftEfficiency.add(L_SHIFT_EFFICIENCY));
+                calculationHolder.addEfficiencyTime((int) range.durationInMins());
+
+                return calculationHolder;
+            }
+        };
+
+        ReflectionTestUtils.setField(ppsBaseAlgorithmService, "dailyProgressService", dailyProgressService);
+        ReflectionTestUtils.setField(ppsBaseAlgorithmService, "numberService", numberService);
+        ReflectionTestUtils.setField(ppsBaseAlgorithmService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(ppsBaseAlgorithmService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(ppsBaseAlgorithmService, "shiftExceptionService", shiftExceptionService);
+        ReflectionTestUtils.setField(ppsBaseAlgorithmService, "parameterService", parameterService);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+        given(numberService.setScaleWithDefaultMathContext(Mockito.any(BigDecimal.class)))
+                .willAnswer(invocation -> invocation.getArguments()[0]);
+
+        given(parameterService.getParameter()).willReturn(parameter);
+
+        given(shift.getId()).willReturn(L_SHIFT_ID);
+        given(shift.getEntity()).willReturn(shiftEntity);
+        given(shiftsService.findAll(productionLine)).willReturn(Lists.newArrayList(shift));
+
+        given(shiftExceptionService.getShiftWorkDateTimes(Mockito.any(Entity.class), Mockito.any(Shift.class),
+                Mockito.any(DateTime.class), Mockito.anyBoolean())).willAnswer(invocation -> {
+                    DateTime dateOfDay = (DateTime) invocation.getArguments()[2];
+
+                    return Lists.newArrayList(new DateTimeRange(dateOfDay.plusHours(8), dateOfDay.plusHours(16)));
+                });
+
+        given(dataDefinitionService.get(Mockito.anyString(), Mockito.anyString())).willReturn(dailyProgressDD);
+        given(dailyProgressDD.create()).willAnswer(invocation -> mock(Entity.class));
+
+        productionPerShifts = Lists.newArrayList();
+
+        for (int index = 0; index < L_PPS_COUNT; index++) {
+            productionPerShifts.add(mockProductionPerShift(index));
+        }
+
+        executorService = Executors.newFixedThreadPool(L_PPS_COUNT);
+    }
+
+    @After
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private Entity mockProductionPerShift(final int index) {
+        Entity order = mock(Entity.class);
+        Entity productionPerShift = mock(Entity.class);
+
+        given(order.getDateField(OrderFields.START_DATE)).willReturn(L_ORDER_START_DATE.toDate());
+        given(order.getBelongsToField(OrderFields.PRODUCTION_LINE)).willReturn(productionLine);
+        given(order.getDecimalField(OrderFields.PLANNED_QUANTITY)).willReturn(BigDecimal.valueOf(100L + 10L * index));
+
+        given(productionPerShift.getBelongsToField(ProductionPerShiftFields.ORDER)).willReturn(order);
+
+        Map<DailyProgressKey, Entity> dailyProgressesWithTrackingRecords = Maps.newHashMap();
+
+        if (index % 2 == 0) {
+            BigDecimal registeredQuantity = BigDecimal.valueOf(5L * (index + 1));
+            Entity dailyProgress = mock(Entity.class);
+
+            given(dailyProgress.getDecimalField(DailyProgressFields.QUANTITY)).willReturn(registeredQuantity);
+
+            dailyProgressesWithTrackingRecords.put(new DailyProgressKey(registeredQuantity, L_SHIFT_ID,
+                    L_ORDER_START_DATE.plusDays(index % 4).toLocalDate().toDateTimeAtStartOfDay()), dailyProgress);
+        }
+
+        given(dailyProgressService.getDailyProgressesWithTrackingRecords(productionPerShift))
+                .willReturn(dailyProgressesWithTrackingRecords);
+
+        return productionPerShift;
+    }
+
+    private String generate(final Entity productionPerShift) {
+        ProgressForDaysContainer progressForDaysContainer = new ProgressForDaysContainer();
+
+        ppsBaseAlgorithmService.generateProgressForDays(progressForDaysContainer, productionPerShift);
+
+        return progressForDaysContainer.getProgressForDays().size() + "/" + progressForDaysContainer.getPlannedQuantity() + "/"
+                + progressForDaysContainer.getAlreadyRegisteredQuantity();
+    }
+
+    @Test(timeout = 60000)
+    public final void shouldGenerateSameProgressesForDaysInParallelAsSerially() throws Exception {
+        // given
+        List<String> expectedResults = Lists.newArrayList();
+
+        for (Entity productionPerShift : productionPerShifts) {
+            expectedResults.add(generate(productionPerShift));
+        }
+
+        for (int round = 0; round < L_ROUNDS; round++) {
+            CountDownLatch startLatch = new CountDownLatch(1);
+            List<Future<String>> results = Lists.newArrayList();
+
+            for (Entity productionPerShift : productionPerShifts) {
+                Callable<String> generation = () -> {
+                    startLatch.await();
+
+                    return generate(productionPerShift);
+                };
+
+                results.add(executorService.submit(generation));
+            }
+
+            // when
+            startLatch.countDown();
+
+            // then
+            for (int index = 0; index < L_PPS_COUNT; index++) {
+                Assert.assertEquals(expectedResults.get(index), results.get(index).get(30, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+}
@@ -171,12 +171,13 @@ public class ScheduleDetailsListenersPS {
     public void assignOperationsToWorkstations(final ViewDefinitionState view, final ComponentState state, final String[] args) {
         Entity schedule = ((FormComponent) state).getEntity();
         Map<Long, Date> workstationsFinishDates = Maps.newHashMap();
+        Map<Long, Optional<Date>> operationalTasksMaxFinishDates = Maps.newHashMap();
         Set<Long> ordersToAvoid = Sets.newHashSet();
         List<Long> positionsIds = sortPositionsForWorkstations(schedule.getId());
+        Map<Long, Entity> positions = getSchedulePositions(positionsIds);
         Date scheduleStartTime = schedule.getDateField(ScheduleFields.START_TIME);
         for (Long positionId : positionsIds) {
-            Entity position = dataDefinitionService
-                    .get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_SCHEDULE_POSITION).get(positionId);
+            Entity position = positions.get(positionId);
             if (ordersToAvoid.contains(position.getBelongsToField(SchedulePositionFields.ORDER).getId())) {
                 continue;
             }
@@ -187,8 +188,9 @@ public class ScheduleDetailsListenersPS {
             }
             Map<Long, PositionNewData> operationWorkstationsPositionNewData = Maps.newHashMap();
 
-            boolean allMachineWorkTimesEqualsZero = getWorkstationsNewFinishDate(workstationsFinishDates, scheduleStartTime,
-                    position, workstations, operationWorkstationsPositionNewData);
+            boolean allMachineWorkTimesEqualsZero = getWorkstationsNewFinishDate(workstationsFinishDates,
+                    operationalTasksMaxFinishDates, scheduleStartTime, position, workstations,
+                    operationWorkstationsPositionNewData);
 
             if (allMachineWorkTimesEqualsZero) {
                 ordersToAvoid.add(position.getBelongsToField(SchedulePositionFields.ORDER).getId());
@@ -214,6 +216,16 @@ public class ScheduleDetailsListenersPS {
         }
     }
 
+    private Map<Long, Entity> getSchedulePositions(final List<Long> positionsIds) {
+        if (positionsIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return dataDefinitionService.get(OrdersConstants.PLUGIN_IDENTIFIER, OrdersConstants.MODEL_SCHEDULE_POSITION).find()
+                .add(SearchRestrictions.in("id", positionsIds)).list().getEntities().stream()
+                .collect(Collectors.toMap(Entity::getId, position -> position));
+    }
+
     private List<Entity> getWorkstationsFromTOC(Entity position) {
         Entity technologyOperationComponent = position.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT);
         List<Entity> workstations;
@@ -239,15 +251,19 @@ public class ScheduleDetailsListenersPS {
         return workstations;
     }
 
-    private boolean getWorkstationsNewFinishDate(Map<Long, Date> workstationsFinishDates, Date scheduleStartTime, Entity position,
+    private boolean getWorkstationsNewFinishDate(Map<Long, Date> workstationsFinishDates,
+            Map<Long, Optional<Date>> operationalTasksMaxFinishDates, Date scheduleStartTime, Entity position,
             List<Entity> workstations, Map<Long, PositionNewData> operationWorkstationsPositionNewData) {
         Entity schedule = position.getBelongsToField(SchedulePositionFields.SCHEDULE);
+        Map<Long, Entity> techOperCompWorkstationTimes = getTechOperCompWorkstationTimes(position);
+        Date childrenMaxEndTime = getChildrenMaxEndTime(position);
         boolean allMachineWorkTimesEqualsZero = true;
         for (Entity workstation : workstations) {
             Integer laborWorkTime = position.getIntegerField(SchedulePositionFields.LABOR_WORK_TIME);
             Integer machineWorkTime = position.getIntegerField(SchedulePositionFields.MACHINE_WORK_TIME);
             Integer additionalTime = position.getIntegerField(SchedulePositionFields.ADDITIONAL_TIME);
-            Optional<Entity> techOperCompWorkstationTime = getTechOperCompWorkstationTime(position, workstation);
+            Optional<Entity> techOperCompWorkstationTime = Optional
+                    .ofNullable(techOperCompWorkstationTimes.get(workstation.getId()));
             if (techOperCompWorkstationTime.isPresent()) {
                 OperationWorkTime operationWorkTime = operationWorkTimeService.estimateTechOperationWorkTimeForWorkstation(
                         position.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT),
@@ -264,8 +280,11 @@ public class ScheduleDetailsListenersPS {
             } else {
                 allMachineWorkTimesEqualsZero = false;
             }
-            Date finishDate = getFinishDate(workstationsFinishDates, scheduleStartTime, schedule, workstation);
-            finishDate = getFinishDateWithChildren(position, finishDate);
+            Date finishDate = getFinishDate(workstationsFinishDates, operationalTasksMaxFinishDates, scheduleStartTime, schedule,
+                    workstation);
+            if (!Objects.isNull(childrenMaxEndTime) && childrenMaxEndTime.after(finishDate)) {
+                finishDate = childrenMaxEndTime;
+            }
             DateTime finishDateTime = new DateTime(finishDate);
             Date newStartDate = shiftsService
                     .getNearestWorkingDate(finishDateTime, workstation.getBelongsToField(WorkstationFieldsPL.PRODUCTION_LINE))
@@ -283,35 +302,33 @@ public class ScheduleDetailsListenersPS {
         return allMachineWorkTimesEqualsZero;
     }
 
-    private Date getFinishDateWithChildren(Entity position, Date finishDate) {
-        Date childEndTime = schedulePositionValidators.getChildrenMaxEndTime(position);
-        if (!Objects.isNull(childEndTime) && childEndTime.after(finishDate)) {
-            finishDate = childEndTime;
-        }
+    private Date getChildrenMaxEndTime(Entity position) {
+        Date childrenMaxEndTime = schedulePositionValidators.getChildrenMaxEndTime(position);
         if (pluginManager.isPluginEnabled(ORDERS_FOR_SUBPRODUCTS_GENERATION)) {
-            childEndTime = schedulePositionValidators.getOrdersChildrenMaxEndTime(position);
-            if (!Objects.isNull(childEndTime) && childEndTime.after(finishDate)) {
-                finishDate = childEndTime;
+            Date ordersChildrenMaxEndTime = schedulePositionValidators.getOrdersChildrenMaxEndTime(position);
+            if (!Objects.isNull(ordersChildrenMaxEndTime)
+                    && (Objects.isNull(childrenMaxEndTime) || ordersChildrenMaxEndTime.after(childrenMaxEndTime))) {
+                childrenMaxEndTime = ordersChildrenMaxEndTime;
             }
         }
-        return finishDate;
+        return childrenMaxEndTime;
     }
 
-    private Optional<Entity> getTechOperCompWorkstationTime(Entity position, Entity workstation) {
+    private Map<Long, Entity> getTechOperCompWorkstationTimes(Entity position) {
         Entity technologyOperationComponent = position.getBelongsToField(SchedulePositionFields.TECHNOLOGY_OPERATION_COMPONENT);
         List<Entity> techOperCompWorkstationTimes = technologyOperationComponent
                 .getHasManyField(TechnologyOperationComponentFieldsTNFO.TECH_OPER_COMP_WORKSTATION_TIMES);
+        Map<Long, Entity> techOperCompWorkstationTimesByWorkstation = Maps.newHashMap();
         for (Entity techOperCompWorkstationTime : techOperCompWorkstationTimes) {
-            if (techOperCompWorkstationTime.getBelongsToField(TechOperCompWorkstationTimeFields.WORKSTATION).getId()
-                    .equals(workstation.getId())) {
-                return Optional.of(techOperCompWorkstationTime);
-            }
+            techOperCompWorkstationTimesByWorkstation.putIfAbsent(
+                    techOperCompWorkstationTime.getBelongsToField(TechOperCompWorkstationTimeFields.WORKSTATION).getId(),
+                    techOperCompWorkstationTime);
         }
-        return Optional.empty();
+        return techOperCompWorkstationTimesByWorkstation;
     }
 
-    private Date getFinishDate(Map<Long, Date> workstationsFinishDates, Date scheduleStartTime, Entity schedule,
-            Entity workstation) {
+    private Date getFinishDate(Map<Long, Date> workstationsFinishDates, Map<Long, Optional<Date>> operationalTasksMaxFinishDates,
+            Date scheduleStartTime, Entity schedule, Entity workstation) {
         Date finishDate;
         if (schedule.getBooleanField(ScheduleFields.SCHEDULE_FOR_BUFFER)
                 && workstation.getBooleanField(WorkstationFields.BUFFER)) {
@@ -319,8 +336,10 @@ public class ScheduleDetailsListenersPS {
         } else {
             finishDate = workstationsFinishDates.get(workstation.getId());
             if (finishDate == null) {
-                Date operationalTasksMaxFinishDate = getOperationalTasksMaxFinishDateForWorkstation(scheduleStartTime,
-                        workstation);
+                Date operationalTasksMaxFinishDate = operationalTasksMaxFinishDates
+                        .computeIfAbsent(workstation.getId(), workstationId -> Optional
+                                .ofNullable(getOperationalTasksMaxFinishDateForWorkstation(scheduleStartTime, workstation)))
+                        .orElse(null);
                 if (operationalTasksMaxFinishDate != null) {
                     finishDate = operationalTasksMaxFinishDate;
                     workstationsFinishDates.put(workstation.getId(), finishDate);
@@ -23,6 +23,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.qcadoo.mes.basic.ShiftsService;
 import com.qcadoo.mes.states.StateChangeEntityDescriber;
@@ -65,6 +66,8 @@ public class StateExecutorService {
 
     private ComponentMessagesHolder componentMessagesHolder;
 
+    private final Map<Class<? extends StateService>, List<? extends StateService>> changeStateServices = Maps.newHashMap();
+
     public <M extends StateService> void changeState(final Class<M> serviceMarker, final ViewDefinitionState view,
             final String[] args) {
         componentMessagesHolder = view;
@@ -337,16 +340,30 @@ public class StateExecutorService {
     }
 
     private <M extends StateService> List<M> lookupChangeStateServices(final Class<M> serviceMarker) {
-        Map<String, M> stateServices = applicationContext.getBeansOfType(serviceMarker);
+        List<? extends StateService> stateServices = changeStateServices.get(serviceMarker);
+
+        if (Objects.isNull(stateServices)) {
+            stateServices = getSortedChangeStateServices(serviceMarker);
+
+            changeStateServices.put(serviceMarker, stateServices);
+        }
 
         List<M> services = Lists.newArrayList();
 
-        for (M service : stateServices.values()) {
+        for (StateService service : stateServices) {
             if (serviceEnabled(service)) {
-                services.add(service);
+                services.add(serviceMarker.cast(service));
             }
         }
 
+        return services;
+    }
+
+    private <M extends StateService> List<M> getSortedChangeStateServices(final Class<M> serviceMarker) {
+        Map<String, M> stateServices = applicationContext.getBeansOfType(serviceMarker);
+
+        List<M> services = Lists.newArrayList(stateServices.values());
+
         AnnotationAwareOrderComparator.sort(services);
 
         return services;
@@ -37,6 +37,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.qcadoo.mes.technologies.domain.OperationProductInComponentId;
 import com.qcadoo.mes.technologies.domain.TechnologyId;
@@ -58,11 +59,33 @@ public class TechnologyStructureTreeBuilder {
 
     public Optional<TechnologyStructureNode> forTechnology(final TechnologyId technologyId,
             final Optional<TechnologyId> defaultTechnologyId, final ContextId contextId, final GeneratorSettings settings) {
-        return buildGeneratorFor(technologyId, defaultTechnologyId, contextId, settings).build();
+        return forTechnology(technologyId, defaultTechnologyId, contextId, settings, new StructuresCache());
+    }
+
+    private Optional<TechnologyStructureNode> forTechnology(final TechnologyId technologyId,
+            final Optional<TechnologyId> defaultTechnologyId, final ContextId contextId, final GeneratorSettings settings,
+            final StructuresCache structuresCache) {
+        return buildGeneratorFor(technologyId, defaultTechnologyId, contextId, settings, structuresCache).build();
     }
 
     public Builder buildGeneratorFor(final TechnologyId technologyId, final Optional<TechnologyId> defaultTechnologyId,
             final ContextId contextId, final GeneratorSettings settings) {
+        return buildGeneratorFor(technologyId, defaultTechnologyId, contextId, settings, new StructuresCache());
+    }
+
+    private Builder buildGeneratorFor(final TechnologyId technologyId, final Optional<TechnologyId> defaultTechnologyId,
+            final ContextId contextId, final GeneratorSettings settings, final StructuresCache structuresCache) {
+        TechnologyStructure technologyStructure = structuresCache.technologyStructures.computeIfAbsent(technologyId,
+                this::findTechnologyStructure);
+        Map<TechnologyId, Entity> existingCustomizedNodes = structuresCache.existingCustomizedNodes.computeIfAbsent(contextId,
+                technologyStructureTreeDataProvider::findExistingCustomizedNodes);
+
+        return new Builder(contextId, technologyId, defaultTechnologyId, settings, technologyStructure.intermediates,
+                technologyStructure.materialsAndComponents, technologyStructure.productBySizeGroups, existingCustomizedNodes,
+                structuresCache);
+    }
+
+    private TechnologyStructure findTechnologyStructure(final TechnologyId technologyId) {
         Multimap<Optional<TechnologyOperationId>, ProductInfo> intermediates = technologyStructureTreeDataProvider
                 .findIntermediates(technologyId);
         Preconditions.checkState(intermediates.isEmpty() || intermediates.get(Optional.empty()).size() == 1,
@@ -71,11 +94,38 @@ public class TechnologyStructureTreeBuilder {
                 .findMaterialsAndComponents(technologyId);
         Multimap<Optional<TechnologyOperationId>, ProductInfo> productBySizeGroups = technologyStructureTreeDataProvider
                 .findProductBySizeGroups(technologyId);
-        Map<TechnologyId, Entity> existingCustomizedNodes = technologyStructureTreeDataProvider
-                .findExistingCustomizedNodes(contextId);
 
-        return new Builder(contextId, technologyId, defaultTechnologyId, settings, intermediates, materialsAndComponents,
-                productBySizeGroups, existingCustomizedNodes);
+        return new TechnologyStructure(intermediates, materialsAndComponents, productBySizeGroups);
+    }
+
+    /**
+     * Structures loaded during one tree build. Components reused in many places of the tree are read from the database only
+     * once.
+     */
+    private static final class StructuresCache {
+
+        private final Map<TechnologyId, TechnologyStructure> technologyStructures = Maps.newHashMap();
+
+        private final Map<ContextId, Map<TechnologyId, Entity>> existingCustomizedNodes = Maps.newHashMap();
+
+    }
+
+    private static final class TechnologyStructure {
+
+        private final Multimap<Optional<TechnologyOperationId>, ProductInfo> intermediates;
+
+        private final Multimap<Optional<TechnologyOperationId>, ProductInfo> materialsAndComponents;
+
+        private final Multimap<Optional<TechnologyOperationId>, ProductInfo> productBySizeGroups;
+
+        private TechnologyStructure(final Multimap<Optional<TechnologyOperationId>, ProductInfo> intermediates,
+                final Multimap<Optional<TechnologyOperationId>, ProductInfo> materialsAndComponents,
+                final Multimap<Optional<TechnologyOperationId>, ProductInfo> productBySizeGroups) {
+            this.intermediates = intermediates;
+            this.materialsAndComponents = materialsAndComponents;
+            this.productBySizeGroups = productBySizeGroups;
+        }
+
     }
 
     private final class Builder {
@@ -96,12 +146,14 @@ public class TechnologyStructureTreeBuilder {
 
         private final Map<TechnologyId, Entity> existingCustomizedNodes;
 
+        private final StructuresCache structuresCache;
+
         private Builder(final ContextId contextId, final TechnologyId technologyId,
                 final Optional<TechnologyId> defaultTechnologyId, final GeneratorSettings settings,
                 final Multimap<Optional<TechnologyOperationId>, ProductInfo> intermediates,
                 final Multimap<Optional<TechnologyOperationId>, ProductInfo> materialsAndComponents,
                 final Multimap<Optional<TechnologyOperationId>, ProductInfo> productBySizeGroups,
-                final Map<TechnologyId, Entity> existingCustomizedNodes) {
+                final Map<TechnologyId, Entity> existingCustomizedNodes, final StructuresCache structuresCache) {
             this.contextId = contextId;
             this.technologyId = technologyId;
             this.defaultTechnologyId = defaultTechnologyId;
@@ -110,6 +162,7 @@ public class TechnologyStructureTreeBuilder {
             this.materialsAndComponents = materialsAndComponents;
             this.productBySizeGroups = productBySizeGroups;
             this.existingCustomizedNodes = existingCustomizedNodes;
+            this.structuresCache = structuresCache;
         }
 
         public Optional<TechnologyStructureNode> build() {
@@ -121,7 +174,8 @@ public class TechnologyStructureTreeBuilder {
             if (!defaultTechnologyId.isPresent()) {
                 Optional<TechnologyId> maybePrevTech = root.flatMap(this::findCustomizedTechFor);
 
-                return forTechnology(maybePrevTech.orElse(technologyId), Optional.of(technologyId), contextId, settings);
+                return forTechnology(maybePrevTech.orElse(technologyId), Optional.of(technologyId), contextId, settings,
+                        structuresCache);
             }
 
             return root.map(
@@ -191,8 +245,9 @@ public class TechnologyStructureTreeBuilder {
             TechnologyId prodTech = findCustomizedTechFor(productInfo).orElseGet(() -> productInfo.getProductTechnology()
                     .orElseThrow(() -> new IllegalStateException("Missing technology for component's product")));
 
-            return forTechnology(prodTech, productInfo.getProductTechnology(), contextId, settings).map(n -> n
-                    .withProductTechnology(Optional.of(prodTech)).withOriginalTechnology(productInfo.getProductTechnology()));
+            return forTechnology(prodTech, productInfo.getProductTechnology(), contextId, settings, structuresCache)
+                    .map(n -> n.withProductTechnology(Optional.of(prodTech))
+                            .withOriginalTechnology(productInfo.getProductTechnology()));
         }
 
         private Optional<TechnologyId> findCustomizedTechFor(final ProductInfo productInfo) {
@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -60,6 +61,7 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 
 @Service
@@ -116,13 +118,15 @@ public class TreeGenerator {
     }
 
     private void updateNodesToCustomized(Entity context, Map<OperationProductKey, Long> customizedOperationProductTechnologies) {
+        if (customizedOperationProductTechnologies.isEmpty()) {
+            return;
+        }
+
+        Map<OperationProductKey, Entity> nodes = getNodesForOperationProducts(context,
+                customizedOperationProductTechnologies.keySet());
+
         customizedOperationProductTechnologies.forEach((opk, tech) -> {
-            Entity node = getGeneratorTreeNodeDD().find()
-                    .createAlias(GeneratorTreeNodeFields.PRODUCT, GeneratorTreeNodeFields.PRODUCT, JoinType.LEFT)
-                    .add(SearchRestrictions.belongsTo(GeneratorTreeNodeFields.GENERATOR_CONTEXT, context))
-                    .add(SearchRestrictions.eq(GeneratorTreeNodeFields.PRODUCT + ".id", opk.getProductId()))
-                    .add(SearchRestrictions.eq(GeneratorTreeNodeFields.OPERATION + ".id", opk.getOperationId())).setMaxResults(1)
-                    .uniqueResult();
+            Entity node = nodes.get(opk);
 
             if (Objects.nonNull(node)) {
                 node.setField(GeneratorTreeNodeFields.PRODUCT_TECHNOLOGY, tech);
@@ -133,6 +137,35 @@ public class TreeGenerator {
         });
     }
 
+    private Map<OperationProductKey, Entity> getNodesForOperationProducts(final Entity context,
+            final Set<OperationProductKey> operationProductKeys) {
+        Set<Long> productIds = operationProductKeys.stream().map(OperationProductKey::getProductId).collect(Collectors.toSet());
+        Set<Long> operationIds = operationProductKeys.stream().map(OperationProductKey::getOperationId)
+                .collect(Collectors.toSet());
+
+        List<Entity> nodes = getGeneratorTreeNodeDD().find()
+                .createAlias(GeneratorTreeNodeFields.PRODUCT, GeneratorTreeNodeFields.PRODUCT, JoinType.LEFT)
+                .createAlias(GeneratorTreeNodeFields.OPERATION, GeneratorTreeNodeFields.OPERATION, JoinType.LEFT)
+                .add(SearchRestrictions.belongsTo(GeneratorTreeNodeFields.GENERATOR_CONTEXT, context))
+                .add(SearchRestrictions.in(GeneratorTreeNodeFields.PRODUCT + ".id", productIds))
+                .add(SearchRestrictions.in(GeneratorTreeNodeFields.OPERATION + ".id", operationIds))
+                .addOrder(SearchOrders.asc("id")).list().getEntities();
+
+        Map<OperationProductKey, Entity> nodesForOperationProducts = Maps.newHashMap();
+
+        for (Entity node : nodes) {
+            OperationProductKey operationProductKey = new OperationProductKey(
+                    node.getBelongsToField(GeneratorTreeNodeFields.OPERATION).getId(),
+                    node.getBelongsToField(GeneratorTreeNodeFields.PRODUCT).getId());
+
+            if (operationProductKeys.contains(operationProductKey)) {
+                nodesForOperationProducts.putIfAbsent(operationProductKey, node);
+            }
+        }
+
+        return nodesForOperationProducts;
+    }
+
     private Map<OperationProductKey, Long> getCustomizedTechnologies(final Entity context, boolean applyCustomized) {
         Map<OperationProductKey, Long> map = Maps.newHashMap();
 
@@ -207,14 +240,29 @@ public class TreeGenerator {
         entity.setField(GeneratorTreeNodeFields.VARIOUS_QUANTITIES_IN_PRODUCTS_BY_SIZE,
                 productInfo.getVariousQuantitiesInProductsBySize());
         setUpOperationField(entity, productInfo);
-        setUpDivisionField(entity, productInfo);
-        setUpTechnologyGeneratorAndPerformance(entity, productInfo);
+
+        Optional<Entity> toc = getTechnologyOperationComponent(productInfo);
+
+        setUpDivisionField(entity, toc);
+        setUpTechnologyGeneratorAndPerformance(entity, toc);
         entity.setField(GeneratorTreeNodeFields.QUANTITY, productInfo.getQuantity());
         entity.setField(GeneratorTreeNodeFields.ENTITY_TYPE, node.getType().getStringValue());
         entity.setField(GeneratorTreeNodeFields.UNIT, productInfo.getUnit());
         setUpSizeGroupField(entity, productInfo);
 
-        return entity.getDataDefinition().save(entity);
+        return entity;
+    }
+
+    private Optional<Entity> getTechnologyOperationComponent(final ProductInfo productInfo) {
+        TechnologyOperationId tocId = productInfo.getTocId();
+
+        if (Objects.isNull(tocId)) {
+            return Optional.empty();
+        }
+
+        return Optional.ofNullable(dataDefinitionService
+                .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT)
+                .get(tocId.get()));
     }
 
     private void setUpProductTechnologyFields(final Entity entity, final ProductInfo productInfo) {
@@ -238,19 +286,9 @@ public class TreeGenerator {
         setBelongsToField(entity, GeneratorTreeNodeFields.OPERATION, operationId.get());
     }
 
-    private void setUpDivisionField(final Entity entity, final ProductInfo productInfo) {
-        TechnologyOperationId tocId = productInfo.getTocId();
-
-        if (Objects.nonNull(tocId)) {
-            Entity toc = dataDefinitionService
-                    .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT)
-                    .get(tocId.get());
-
-            if (Objects.nonNull(toc)) {
-                setBelongsToField(entity, GeneratorTreeNodeFields.DIVISION,
-                        toc.getBelongsToField(TechnologyOperationComponentFields.DIVISION));
-            }
-        }
+    private void setUpDivisionField(final Entity entity, final Optional<Entity> toc) {
+        toc.ifPresent(t -> setBelongsToField(entity, GeneratorTreeNodeFields.DIVISION,
+                t.getBelongsToField(TechnologyOperationComponentFields.DIVISION)));
     }
 
     private void setUpSizeGroupField(final Entity entity, final ProductInfo productInfo) {
@@ -291,13 +329,9 @@ public class TreeGenerator {
                 dataDefinition.getName()));
     }
 
-    private void setUpTechnologyGeneratorAndPerformance(final Entity entity, final ProductInfo productInfo) {
-        TechnologyOperationId tocId = productInfo.getTocId();
-
-        if (Objects.nonNull(tocId)) {
-            Entity tech = dataDefinitionService
-                    .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT)
-                    .get(tocId.get()).getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY);
+    private void setUpTechnologyGeneratorAndPerformance(final Entity entity, final Optional<Entity> toc) {
+        if (toc.isPresent()) {
+            Entity tech = toc.get().getBelongsToField(TechnologyOperationComponentFields.TECHNOLOGY);
 
             if (Objects.nonNull(tech)) {
                 setBelongsToField(entity, GeneratorTreeNodeFields.TECHNOLOGY_GROUP,
@@ -41,15 +41,14 @@ import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
 import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
-import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityTree;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchRestrictions;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -77,6 +76,9 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private TechnologyService technologyService;
+
     @Override
     public ProductQuantitiesHolder getProductComponentQuantities(final Entity technology, final BigDecimal givenQuantity) {
         Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
@@ -199,6 +201,8 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             final OperationProductComponentWithQuantityContainer productComponentWithQuantities,
             final Set<OperationProductComponentHolder> nonComponents, final boolean onlyComponents, final boolean onlyMaterials) {
         Map<OperationProductComponentHolder, BigDecimal> productWithQuantities = Maps.newHashMap();
+        Set<Long> productIdsWithAcceptedMasterTechnology = onlyMaterials
+                ? getProductIdsWithAcceptedMasterTechnology(productComponentWithQuantities) : Collections.emptySet();
 
         for (Map.Entry<OperationProductComponentHolder, BigDecimal> productComponentWithQuantity : productComponentWithQuantities
                 .asMap().entrySet()) {
@@ -207,11 +211,9 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             if (onlyComponents && nonComponents.contains(operationProductComponentHolder)) {
                 continue;
             }
-            if (onlyMaterials) {
-                Entity product = operationProductComponentHolder.getProduct();
-                if (hasAcceptedMasterTechnology(product)) {
-                    continue;
-                }
+            if (onlyMaterials
+                    && productIdsWithAcceptedMasterTechnology.contains(operationProductComponentHolder.getProductId())) {
+                continue;
             }
 
             addOPCQuantitiesToList(productComponentWithQuantity, productWithQuantities);
@@ -315,6 +317,7 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents,
             final boolean onTheFly) {
         Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
+        Map<Long, TechnologyOperationComponentNode> technologyRoots = Maps.newHashMap();
 
         for (Entity order : orders) {
             BigDecimal plannedQuantity = order.getDecimalField(L_PLANNED_QUANTITY);
@@ -325,15 +328,132 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
                 throw new IllegalStateException("Order doesn't contain technology.");
             }
 
+            if (!technologyRoots.containsKey(technology.getId())) {
+                technologyRoots.put(technology.getId(), createTechnologyOperationComponentNodes(technology));
+            }
+
             productComponentWithQuantitiesForOrders.put(
                     order.getId(),
-                    getProductComponentWithQuantitiesForTechnology(technology, null, plannedQuantity, operationRuns,
-                            nonComponents));
+                    getProductComponentWithQuantitiesForTechnology(technologyRoots.get(technology.getId()), plannedQuantity,
+                            operationRuns, nonComponents));
         }
 
         return groupOperationProductComponentWithQuantities(productComponentWithQuantitiesForOrders);
     }
 
+    private TechnologyOperationComponentNode createTechnologyOperationComponentNodes(final Entity technology) {
+        Entity root = getOperationComponentsFromTechnology(technology).getRoot();
+
+        if (Objects.isNull(root)) {
+            return null;
+        }
+
+        TechnologyOperationComponentNode rootNode = createTechnologyOperationComponentNode(root);
+
+        rootNode.setTechnologyProductId(technology.getBelongsToField(TechnologyFields.PRODUCT).getId());
+
+        collectTechnologyOperationComponentNodes(rootNode, rootNode.getNodes());
+
+        return rootNode;
+    }
+
+    private TechnologyOperationComponentNode createTechnologyOperationComponentNode(final Entity operationComponent) {
+        TechnologyOperationComponentNode node = new TechnologyOperationComponentNode(operationComponent);
+
+        for (Entity child : operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
+            node.getChildren().add(createTechnologyOperationComponentNode(child));
+        }
+
+        return node;
+    }
+
+    private void collectTechnologyOperationComponentNodes(final TechnologyOperationComponentNode node,
+            final List<TechnologyOperationComponentNode> nodes) {
+        nodes.add(node);
+
+        for (TechnologyOperationComponentNode child : node.getChildren()) {
+            collectTechnologyOperationComponentNodes(child, nodes);
+        }
+    }
+
+    private OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForTechnology(
+            final TechnologyOperationComponentNode root, final BigDecimal givenQuantity,
+            final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents) {
+        OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
+
+        if (Objects.nonNull(root)) {
+            for (TechnologyOperationComponentNode node : root.getNodes()) {
+                preloadOperationProductComponentQuantity(node.getOperationProductInComponents(),
+                        operationProductComponentWithQuantityContainer);
+                preloadOperationProductComponentQuantity(node.getOperationProductOutComponents(),
+                        operationProductComponentWithQuantityContainer);
+
+                operationRuns.put(node.getOperationComponent().getId(), BigDecimal.ONE);
+            }
+
+            traverseProductQuantitiesAndOperationRuns(root.getTechnologyProductId(), givenQuantity, root, null,
+                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns);
+        }
+
+        return operationProductComponentWithQuantityContainer;
+    }
+
+    private void traverseProductQuantitiesAndOperationRuns(final Long technologyProductId, final BigDecimal givenQuantity,
+            final TechnologyOperationComponentNode node, final TechnologyOperationComponentNode previousNode,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Set<OperationProductComponentHolder> nonComponents, final Map<Long, BigDecimal> operationRuns) {
+        if (Objects.isNull(previousNode)) {
+            for (Entity operationProductOutComponent : node.getOperationProductOutComponents()) {
+                if (operationProductOutComponent.getBelongsToField(OperationProductOutComponentFields.PRODUCT).getId()
+                        .equals(technologyProductId)) {
+                    BigDecimal outQuantity = operationProductComponentWithQuantityContainer.get(operationProductOutComponent);
+
+                    multiplyProductQuantitiesAndAddOperationRuns(node.getOperationComponent(),
+                            node.getOperationProductInComponents(), node.getOperationProductOutComponents(), givenQuantity,
+                            outQuantity, operationProductComponentWithQuantityContainer, operationRuns);
+
+                    break;
+                }
+            }
+        } else {
+            for (Entity operationProductInComponent : previousNode.getOperationProductInComponents()) {
+                boolean isntComponent = false;
+
+                for (Entity operationProductOutComponent : node.getOperationProductOutComponents()) {
+                    if (!operationProductInComponent
+                            .getBooleanField(OperationProductInComponentFields.DIFFERENT_PRODUCTS_IN_DIFFERENT_SIZES)
+                            && !Objects.isNull(operationProductInComponent
+                                    .getBelongsToField(OperationProductInComponentFields.PRODUCT))
+                            && operationProductOutComponent
+                                    .getBelongsToField(OperationProductOutComponentFields.PRODUCT)
+                                    .getId()
+                                    .equals(operationProductInComponent.getBelongsToField(
+                                            OperationProductInComponentFields.PRODUCT).getId())) {
+                        isntComponent = true;
+
+                        BigDecimal outQuantity = operationProductComponentWithQuantityContainer.get(operationProductOutComponent);
+                        BigDecimal inQuantity = operationProductComponentWithQuantityContainer.get(operationProductInComponent);
+
+                        multiplyProductQuantitiesAndAddOperationRuns(node.getOperationComponent(),
+                                node.getOperationProductInComponents(), node.getOperationProductOutComponents(), inQuantity,
+                                outQuantity, operationProductComponentWithQuantityContainer, operationRuns);
+
+                        break;
+                    }
+                }
+
+                if (isntComponent) {
+                    nonComponents.add(new OperationProductComponentHolder(operationProductInComponent));
+                }
+            }
+        }
+
+        for (TechnologyOperationComponentNode child : node.getChildren()) {
+            traverseProductQuantitiesAndOperationRuns(technologyProductId, givenQuantity, child, node,
+                    operationProductComponentWithQuantityContainer, nonComponents, operationRuns);
+        }
+    }
+
     @Override
     public OperationProductComponentWithQuantityContainer groupOperationProductComponentWithQuantities(
             final Map<Long, OperationProductComponentWithQuantityContainer> operationProductComponentWithQuantityContainerForOrders) {
@@ -531,6 +651,17 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             final BigDecimal actual,
             final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
             final Map<Long, BigDecimal> operationRuns) {
+        multiplyProductQuantitiesAndAddOperationRuns(operationComponent,
+                operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS),
+                operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS), needed,
+                actual, operationProductComponentWithQuantityContainer, operationRuns);
+    }
+
+    private void multiplyProductQuantitiesAndAddOperationRuns(final Entity operationComponent,
+            final List<Entity> operationProductInComponents, final List<Entity> operationProductOutComponents,
+            final BigDecimal needed, final BigDecimal actual,
+            final OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer,
+            final Map<Long, BigDecimal> operationRuns) {
         BigDecimal multiplier = needed.divide(actual, numberService.getMathContext());
 
         if (!operationComponent.getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE)) {
@@ -546,12 +677,10 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
 
         operationRuns.put(operationComponent.getId(), runs);
 
-        multiplyOperationProductComponentQuantities(
-                operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS),
-                multiplier, operationProductComponentWithQuantityContainer);
-        multiplyOperationProductComponentQuantities(
-                operationComponent.getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS),
-                multiplier, operationProductComponentWithQuantityContainer);
+        multiplyOperationProductComponentQuantities(operationProductInComponents, multiplier,
+                operationProductComponentWithQuantityContainer);
+        multiplyOperationProductComponentQuantities(operationProductOutComponents, multiplier,
+                operationProductComponentWithQuantityContainer);
     }
 
     private void multiplyOperationProductComponentQuantities(final List<Entity> operationProductComponents,
@@ -643,6 +772,8 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
             final OperationProductComponentWithQuantityContainer productComponentWithQuantities,
             final Set<OperationProductComponentHolder> nonComponents, final boolean onlyComponents, final boolean onlyMaterials) {
         Map<Long, BigDecimal> productWithQuantities = Maps.newHashMap();
+        Set<Long> productIdsWithAcceptedMasterTechnology = onlyMaterials
+                ? getProductIdsWithAcceptedMasterTechnology(productComponentWithQuantities) : Collections.emptySet();
 
         for (Entry<OperationProductComponentHolder, BigDecimal> productComponentWithQuantity : productComponentWithQuantities
                 .asMap().entrySet()) {
@@ -652,12 +783,9 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
                 continue;
             }
 
-            if (onlyMaterials) {
-                Entity product = operationProductComponentHolder.getProduct();
-
-                if (hasAcceptedMasterTechnology(product)) {
-                    continue;
-                }
+            if (onlyMaterials
+                    && productIdsWithAcceptedMasterTechnology.contains(operationProductComponentHolder.getProductId())) {
+                continue;
             }
 
             addProductQuantitiesToList(productComponentWithQuantity, productWithQuantities);
@@ -666,16 +794,12 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
         return productWithQuantities;
     }
 
-    private boolean hasAcceptedMasterTechnology(final Entity product) {
-        DataDefinition technologyDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                TechnologiesConstants.MODEL_TECHNOLOGY);
-        Entity masterTechnology = technologyDD
-                .find()
-                .add(SearchRestrictions.and(SearchRestrictions.belongsTo(TechnologyFields.PRODUCT, product),
-                        (SearchRestrictions.eq("state", "02accepted"))))
-                .add(SearchRestrictions.eq(TechnologyFields.MASTER, true)).setMaxResults(1).uniqueResult();
+    private Set<Long> getProductIdsWithAcceptedMasterTechnology(
+            final OperationProductComponentWithQuantityContainer productComponentWithQuantities) {
+        Set<Long> productIds = productComponentWithQuantities.asMap().keySet().stream()
+                .map(OperationProductComponentHolder::getProductId).filter(Objects::nonNull).collect(Collectors.toSet());
 
-        return Objects.nonNull(masterTechnology);
+        return technologyService.getProductIdsWithAcceptedMasterTechnology(productIds);
     }
 
     @Override
@@ -755,4 +879,60 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
         return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).get(productId);
     }
 
+    /**
+     * Operation component of a technology with its children and product components loaded once, so the same technology can be
+     * exploded for many orders without fetching its tree again.
+     */
+    private static class TechnologyOperationComponentNode {
+
+        private final Entity operationComponent;
+
+        private final List<Entity> operationProductInComponents;
+
+        private final List<Entity> operationProductOutComponents;
+
+        private final List<TechnologyOperationComponentNode> children = Lists.newArrayList();
+
+        private final List<TechnologyOperationComponentNode> nodes = Lists.newArrayList();
+
+        private Long technologyProductId;
+
+        TechnologyOperationComponentNode(final Entity operationComponent) {
+            this.operationComponent = operationComponent;
+            this.operationProductInComponents = Lists.newArrayList(operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS).iterator());
+            this.operationProductOutComponents = Lists.newArrayList(operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS).iterator());
+        }
+
+        Entity getOperationComponent() {
+            return operationComponent;
+        }
+
+        List<Entity> getOperationProductInComponents() {
+            return operationProductInComponents;
+        }
+
+        List<Entity> getOperationProductOutComponents() {
+            return operationProductOutComponents;
+        }
+
+        List<TechnologyOperationComponentNode> getChildren() {
+            return children;
+        }
+
+        List<TechnologyOperationComponentNode> getNodes() {
+            return nodes;
+        }
+
+        Long getTechnologyProductId() {
+            return technologyProductId;
+        }
+
+        void setTechnologyProductId(final Long technologyProductId) {
+            this.technologyProductId = technologyProductId;
+        }
+
+    }
+
 }
@@ -32,19 +32,20 @@ import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
 import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
 import com.qcadoo.mes.technologies.tree.ProductStructureTreeService;
-import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityTree;
-import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.utils.EntityTreeUtilsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 public class ProductQuantitiesWithComponentsServiceImpl implements ProductQuantitiesWithComponentsService {
@@ -58,6 +59,9 @@ public class ProductQuantitiesWithComponentsServiceImpl implements ProductQuanti
     @Autowired
     DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    TechnologyService technologyService;
+
     @Override
     public Map<OperationProductComponentHolder, BigDecimal> getNeededProductQuantitiesByOPC(Entity technology,
             BigDecimal givenQuantity, MrpAlgorithm mrpAlgorithm) {
@@ -85,6 +89,8 @@ public class ProductQuantitiesWithComponentsServiceImpl implements ProductQuanti
             final OperationProductComponentWithQuantityContainer productComponentWithQuantities,
             final Set<OperationProductComponentHolder> nonComponents, final boolean onlyComponents, final boolean onlyMaterials) {
         Map<OperationProductComponentHolder, BigDecimal> productWithQuantities = Maps.newHashMap();
+        Set<Long> productIdsWithAcceptedMasterTechnology = onlyMaterials
+                ? getProductIdsWithAcceptedMasterTechnology(productComponentWithQuantities) : Collections.emptySet();
 
         for (Map.Entry<OperationProductComponentHolder, BigDecimal> productComponentWithQuantity : productComponentWithQuantities
                 .asMap().entrySet()) {
@@ -93,11 +99,9 @@ public class ProductQuantitiesWithComponentsServiceImpl implements ProductQuanti
             if (onlyComponents && nonComponents.contains(operationProductComponentHolder)) {
                 continue;
             }
-            if (onlyMaterials) {
-                Entity product = operationProductComponentHolder.getProduct();
-                if (hasAcceptedMasterTechnology(product)) {
-                    continue;
-                }
+            if (onlyMaterials
+                    && productIdsWithAcceptedMasterTechnology.contains(operationProductComponentHolder.getProductId())) {
+                continue;
             }
 
             addOPCQuantitiesToList(productComponentWithQuantity, productWithQuantities);
@@ -106,16 +110,12 @@ public class ProductQuantitiesWithComponentsServiceImpl implements ProductQuanti
         return productWithQuantities;
     }
 
-    private boolean hasAcceptedMasterTechnology(final Entity product) {
-        DataDefinition technologyDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                TechnologiesConstants.MODEL_TECHNOLOGY);
-        Entity masterTechnology = technologyDD.find()
-                .add(SearchRestrictions.and(SearchRestrictions.belongsTo(TechnologyFields.PRODUCT, product),
-                        (SearchRestrictions.eq("state", "02accepted"))))
-                .add(SearchRestrictions.eq(TechnologyFields.MASTER, true)).setMaxResults(1).uniqueResult();
-
-        return masterTechnology != null;
+    private Set<Long> getProductIdsWithAcceptedMasterTechnology(
+            final OperationProductComponentWithQuantityContainer productComponentWithQuantities) {
+        Set<Long> productIds = productComponentWithQuantities.asMap().keySet().stream()
+                .map(OperationProductComponentHolder::getProductId).filter(Objects::nonNull).collect(Collectors.toSet());
 
+        return technologyService.getProductIdsWithAcceptedMasterTechnology(productIds);
     }
 
     public void addOPCQuantitiesToList(final Map.Entry<OperationProductComponentHolder, BigDecimal> productComponentWithQuantity,
@@ -25,6 +25,7 @@ package com.qcadoo.mes.technologies;
 
 import com.beust.jcommander.internal.Sets;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFields;
@@ -42,6 +43,7 @@ import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.JoinType;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchProjections;
 import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.plugin.api.PluginAccessor;
@@ -54,6 +56,8 @@ import com.qcadoo.view.api.utils.NumberGeneratorService;
 import com.qcadoo.view.constants.QcadooViewConstants;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
@@ -91,6 +95,10 @@ public class TechnologyService {
 
     private static final String L_ID = "id";
 
+    private static final String L_PRODUCT_ID = "productId";
+
+    private static final int L_BATCH_SIZE = 1000;
+
     private static final String IS_SYNCHRONIZED_QUERY = String.format(
             "SELECT t.id as id, t.%s as %s from #%s_%s t where t.id = :technologyId", TechnologyFields.EXTERNAL_SYNCHRONIZED,
             TechnologyFields.EXTERNAL_SYNCHRONIZED, TechnologiesConstants.PLUGIN_IDENTIFIER,
@@ -486,6 +494,35 @@ public class TechnologyService {
         return isFinalProduct;
     }
 
+    /**
+     * Resolves which of the given products have an accepted master technology, querying them in batches.
+     * 
+     * @param productIds
+     *            identifiers of the queried products
+     * @return identifiers of products with an accepted master technology
+     */
+    public Set<Long> getProductIdsWithAcceptedMasterTechnology(final Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<Long> productIdsWithMasterTechnology = Sets.newHashSet();
+
+        for (List<Long> productIdsBatch : Iterables.partition(productIds, L_BATCH_SIZE)) {
+            getTechnologyDD().find()
+                    .createAlias(TechnologyFields.PRODUCT, TechnologyFields.PRODUCT, JoinType.INNER)
+                    .add(SearchRestrictions.in(TechnologyFields.PRODUCT + L_DOT + L_ID, productIdsBatch))
+                    .add(SearchRestrictions.eq(TechnologyFields.STATE, TechnologyState.ACCEPTED.getStringValue()))
+                    .add(SearchRestrictions.eq(TechnologyFields.MASTER, true))
+                    .setProjection(SearchProjections.alias(
+                            SearchProjections.field(TechnologyFields.PRODUCT + L_DOT + L_ID), L_PRODUCT_ID))
+                    .list().getEntities().forEach(masterTechnology -> productIdsWithMasterTechnology
+                            .add((Long) masterTechnology.getField(L_PRODUCT_ID)));
+        }
+
+        return productIdsWithMasterTechnology;
+    }
+
     public Entity getProductToProductGroupTechnology(final Entity orderProduct, final Long productId) {
         return dataDefinitionService
                 .get(TechnologiesConstants.PLUGIN_IDENTIFIER, TechnologiesConstants.MODEL_PRODUCT_TO_PRODUCT_GROUP_TECHNOLOGY)
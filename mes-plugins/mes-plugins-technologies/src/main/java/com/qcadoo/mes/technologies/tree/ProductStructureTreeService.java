@@ -26,12 +26,15 @@ package com.qcadoo.mes.technologies.tree;
 import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.states.constants.StateChangeStatus;
 import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
@@ -122,6 +125,11 @@ public class ProductStructureTreeService {
                 .setMaxResults(1).uniqueResult();
     }
 
+    private Entity findTechnologyForProduct(final Entity product, final Map<Long, Optional<Entity>> productsTechnologies) {
+        return productsTechnologies
+                .computeIfAbsent(product.getId(), productId -> Optional.ofNullable(findTechnologyForProduct(product))).orElse(null);
+    }
+
     private BigDecimal findQuantityOfProductInOperation(final Entity technologyInputProductType, final Entity product,
             final Entity operation) {
         EntityList operationProductOutComponents = operation
@@ -157,6 +165,8 @@ public class ProductStructureTreeService {
         Entity technologyFromDB = technology.getDataDefinition().get(technology.getId());
         EntityTree tree = technologyFromDB.getTreeField(TechnologyFields.PRODUCT_STRUCTURE_TREE);
 
+        Map<Long, Optional<Entity>> productsTechnologies = Maps.newHashMap();
+
         if (Objects.nonNull(tree.getRoot())) {
             Date productStructureCreateDate = tree.getRoot().getDateField(ProductStructureTreeNodeFields.CREATE_DATE);
 
@@ -165,8 +175,8 @@ public class ProductStructureTreeService {
             Entity technologyStateChange = getLastTechnologyStateChange(technologyFromDB);
 
             if (productStructureCreateDate.before(technologyStateChange.getDateField(TechnologyStateChangeFields.DATE_AND_TIME))
-                    || checkSubTechnologiesSubstitution(treeEntities)
-                    || checkIfSubTechnologiesChanged(operation, productStructureCreateDate)) {
+                    || checkSubTechnologiesSubstitution(treeEntities, productsTechnologies)
+                    || checkIfSubTechnologiesChanged(operation, productStructureCreateDate, productsTechnologies)) {
                 deleteProductStructureTree(treeEntities);
             } else {
                 return tree;
@@ -193,19 +203,20 @@ public class ProductStructureTreeService {
 
         root = addChild(productStructureList, root, null, L_FINAL_PRODUCT);
 
-        generateTreeForSubProducts(operation, technology, productStructureList, root, view, technology);
+        generateTreeForSubProducts(operation, technology, productStructureList, root, view, technology, productsTechnologies);
 
         technologyFromDB = technology.getDataDefinition().get(technology.getId());
 
         return technologyFromDB.getTreeField(TechnologyFields.PRODUCT_STRUCTURE_TREE);
     }
 
-    private boolean checkIfSubTechnologiesChanged(final Entity operation, final Date productStructureCreateDate) {
+    private boolean checkIfSubTechnologiesChanged(final Entity operation, final Date productStructureCreateDate,
+            final Map<Long, Optional<Entity>> productsTechnologies) {
         for (Entity operationProductInComponent : operation
                 .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)) {
             Entity product = operationProductInComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT);
             Entity subOperation = findOperationForProductWithinChildren(product, operation);
-            Entity subTechnology = findTechnologyForProduct(product);
+            Entity subTechnology = findTechnologyForProduct(product, productsTechnologies);
 
             if (Objects.nonNull(subTechnology)) {
                 Entity technologyStateChange = getLastTechnologyStateChange(subTechnology);
@@ -218,20 +229,21 @@ public class ProductStructureTreeService {
                 if (Objects.isNull(subOperation)) {
                     Entity operationForTechnology = findOperationForProductAndTechnology(product, subTechnology);
 
-                    boolean changed = checkIfSubTechnologiesChanged(operationForTechnology, productStructureCreateDate);
+                    boolean changed = checkIfSubTechnologiesChanged(operationForTechnology, productStructureCreateDate,
+                            productsTechnologies);
 
                     if (changed) {
                         return true;
                     }
                 } else {
-                    boolean changed = checkIfSubTechnologiesChanged(subOperation, productStructureCreateDate);
+                    boolean changed = checkIfSubTechnologiesChanged(subOperation, productStructureCreateDate, productsTechnologies);
 
                     if (changed) {
                         return true;
                     }
                 }
             } else if (Objects.nonNull(subOperation)) {
-                boolean changed = checkIfSubTechnologiesChanged(subOperation, productStructureCreateDate);
+                boolean changed = checkIfSubTechnologiesChanged(subOperation, productStructureCreateDate, productsTechnologies);
 
                 if (changed) {
                     return true;
@@ -248,7 +260,8 @@ public class ProductStructureTreeService {
         }
     }
 
-    private boolean checkSubTechnologiesSubstitution(final List<Entity> treeEntities) {
+    private boolean checkSubTechnologiesSubstitution(final List<Entity> treeEntities,
+            final Map<Long, Optional<Entity>> productsTechnologies) {
         for (Entity entity : treeEntities) {
             String entityType = entity.getStringField(ProductStructureTreeNodeFields.ENTITY_TYPE);
 
@@ -257,7 +270,7 @@ public class ProductStructureTreeService {
             }
 
             Entity product = entity.getBelongsToField(ProductStructureTreeNodeFields.PRODUCT);
-            Entity newTechnology = findTechnologyForProduct(product);
+            Entity newTechnology = findTechnologyForProduct(product, productsTechnologies);
 
             if (entityType.equals(L_MATERIAL) && Objects.nonNull(newTechnology)) {
                 return true;
@@ -275,7 +288,8 @@ public class ProductStructureTreeService {
     }
 
     private void generateTreeForSubProducts(final Entity operation, final Entity technology, final List<Entity> tree,
-            final Entity parent, final ViewDefinitionState view, final Entity mainTechnology) {
+            final Entity parent, final ViewDefinitionState view, final Entity mainTechnology,
+            final Map<Long, Optional<Entity>> productsTechnologies) {
         EntityList operationProductInComponents = operation
                 .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
 
@@ -289,7 +303,7 @@ public class ProductStructureTreeService {
 
             Entity subOperation = findOperationForProductWithinChildren(product, operation);
             BigDecimal quantity = findQuantityOfProductInOperation(technologyInputProductType, product, operation);
-            Entity subTechnology = findTechnologyForProduct(product);
+            Entity subTechnology = findTechnologyForProduct(product, productsTechnologies);
 
             if (Objects.nonNull(subTechnology)) {
                 if (Objects.isNull(subOperation)) {
@@ -310,7 +324,8 @@ public class ProductStructureTreeService {
 
                     child = addChild(tree, child, parent, L_COMPONENT);
 
-                    generateTreeForSubProducts(operationForTechnology, subTechnology, tree, child, view, mainTechnology);
+                    generateTreeForSubProducts(operationForTechnology, subTechnology, tree, child, view, mainTechnology,
+                            productsTechnologies);
                 } else {
                     child.setField(ProductStructureTreeNodeFields.TECHNOLOGY, technology);
                     child.setField(ProductStructureTreeNodeFields.MAIN_TECHNOLOGY, mainTechnology);
@@ -333,7 +348,8 @@ public class ProductStructureTreeService {
                         }
                     }
 
-                    generateTreeForSubProducts(subOperation, technology, tree, child, view, mainTechnology);
+                    generateTreeForSubProducts(subOperation, technology, tree, child, view, mainTechnology,
+                            productsTechnologies);
                 }
             } else {
                 Entity technologyGroup = technology.getBelongsToField(TechnologyFields.TECHNOLOGY_GROUP);
@@ -355,7 +371,8 @@ public class ProductStructureTreeService {
 
                     child = addChild(tree, child, parent, L_INTERMEDIATE);
 
-                    generateTreeForSubProducts(subOperation, technology, tree, child, view, mainTechnology);
+                    generateTreeForSubProducts(subOperation, technology, tree, child, view, mainTechnology,
+                            productsTechnologies);
                 } else {
                     boolean differentProductsInDifferentSizes = operationProductInComponent
                             .getBooleanField(OperationProductInComponentFields.DIFFERENT_PRODUCTS_IN_DIFFERENT_SIZES);
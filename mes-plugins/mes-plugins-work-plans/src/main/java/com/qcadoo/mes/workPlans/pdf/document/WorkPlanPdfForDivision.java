@@ -87,13 +87,16 @@ public class WorkPlanPdfForDivision {
         ListMultimap<String, OrderOperationComponent> titleToOperationComponent = groupingContainer
                 .getTitleToOperationComponent();
 
+        MaterialComponentsCache materialComponentsCache = new MaterialComponentsCache();
+
         for (String title : titleToOperationComponent.keySet()) {
             addWorkPlanTitle(document, workPlan, title, locale);
             List<OrderOperationComponent> components = titleToOperationComponent.get(title);
             List<OrderOperationComponent> sorted = sortOrderOperationComponents(components);
             addMainOrders(document, sorted, locale);
             for (OrderOperationComponent orderOperationComponent : sorted) {
-                addOperationTable(pdfWriter, groupingContainer, document, orderOperationComponent, locale);
+                addOperationTable(pdfWriter, groupingContainer, document, orderOperationComponent, materialComponentsCache,
+                        locale);
 
             }
             document.newPage();
@@ -138,7 +141,8 @@ public class WorkPlanPdfForDivision {
     }
 
     private void addOperationTable(PdfWriter pdfWriter, GroupingContainer groupingContainer, Document document,
-            OrderOperationComponent orderOperationComponent, Locale locale) throws DocumentException {
+            OrderOperationComponent orderOperationComponent, MaterialComponentsCache materialComponentsCache, Locale locale)
+            throws DocumentException {
 
         Map<Long, Map<OperationProductColumn, ColumnAlignment>> outputProductsMap = groupingContainer
                 .getOperationComponentIdProductOutColumnToAlignment();
@@ -174,7 +178,8 @@ public class WorkPlanPdfForDivision {
         addOrderSummary(headerCell, order, product, operationComponent);
 
         addOperationProductsTable(inputCell,
-                addMaterialComponents(orderOperationComponent.getProductionCountingQuantitiesIn(), order),
+                addMaterialComponents(orderOperationComponent.getProductionCountingQuantitiesIn(), order,
+                        materialComponentsCache),
                 inputProductColumnAlignmentMap, ProductDirection.IN, locale);
         addOperationProductsTable(outputCell, orderOperationComponent.getProductionCountingQuantitiesOut(),
                 outputProductColumnAlignmentMap, ProductDirection.OUT, locale);
@@ -296,27 +301,23 @@ public class WorkPlanPdfForDivision {
         cell.addElement(table);
     }
 
-    private List<Entity> addMaterialComponents(List<Entity> productComponents, Entity order) {
+    private List<Entity> addMaterialComponents(List<Entity> productComponents, Entity order,
+            MaterialComponentsCache materialComponentsCache) {
         for (Entity productComponent : productComponents) {
             if (productComponent.getBooleanField(OperationProductInComponentFieldsWP.SHOW_MATERIAL_COMPONENT)) {
-                Entity product = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).get(
-                        productComponent.getIntegerField("productId").longValue());
+                Long productId = productComponent.getIntegerField("productId").longValue();
 
-                Entity technology = getTechnologyForComponent(productComponent, order);
+                Entity technology = materialComponentsCache.ordersProductsTechnologies
+                        .computeIfAbsent(order.getId(), orderId -> new HashMap<>())
+                        .computeIfAbsent(productId,
+                                id -> Optional.ofNullable(getTechnologyForComponent(id, order, materialComponentsCache)))
+                        .orElse(null);
                 if (technology != null) {
-                    Set<String> distinctProductNames = new HashSet<>();
-                    EntityList operationComponents = technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS);
-                    for (Entity operationComponent : operationComponents) {
-                        EntityList operationProductsInComponents = operationComponent
-                                .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
-                        List<String> ProductNames = operationProductsInComponents.stream()
-                                .filter(opic -> !technologyService.isIntermediateProduct(opic))
-                                .map(opic -> opic.getBelongsToField(OperationProductInComponentFields.PRODUCT))
-                                .map(p -> p.getStringField(ProductFields.NAME)).collect(Collectors.toList());
-
-                        distinctProductNames.addAll(ProductNames);
-                    }
+                    Set<String> distinctProductNames = materialComponentsCache.technologiesMaterialNames.computeIfAbsent(
+                            technology.getId(), technologyId -> getMaterialNames(technology));
                     if (!distinctProductNames.isEmpty()) {
+                        Entity product = materialComponentsCache.products.computeIfAbsent(productId, id -> dataDefinitionService
+                                .get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).get(id)).copy();
                         String name = product.getStringField(ProductFields.NAME) + "\n- "
                                 + String.join("\n- ", distinctProductNames);
                         product.setField(ProductFields.NAME, name);
@@ -328,23 +329,41 @@ public class WorkPlanPdfForDivision {
         return productComponents;
     }
 
-    private Entity getTechnologyForComponent(Entity productComponent, Entity order) {
+    private Set<String> getMaterialNames(Entity technology) {
+        Set<String> distinctProductNames = new HashSet<>();
+        EntityList operationComponents = technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS);
+        for (Entity operationComponent : operationComponents) {
+            EntityList operationProductsInComponents = operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
+            List<String> ProductNames = operationProductsInComponents.stream()
+                    .filter(opic -> !technologyService.isIntermediateProduct(opic))
+                    .map(opic -> opic.getBelongsToField(OperationProductInComponentFields.PRODUCT))
+                    .map(p -> p.getStringField(ProductFields.NAME)).collect(Collectors.toList());
+
+            distinctProductNames.addAll(ProductNames);
+        }
+        return distinctProductNames;
+    }
+
+    private Entity getTechnologyForComponent(Long productId, Entity order, MaterialComponentsCache materialComponentsCache) {
         List<Entity> productOrders = order
                 .getDataDefinition()
                 .find()
                 .add(SearchRestrictions.belongsTo("parent", order))
                 .add(SearchRestrictions.belongsTo("product", BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT,
-                        productComponent.getIntegerField("productId").longValue())).list().getEntities();
+                        productId)).list().getEntities();
         if (productOrders != null && !productOrders.isEmpty()) {
             return productOrders.get(0).getBelongsToField(OrderFields.TECHNOLOGY);
         } else {
-            DataDefinition technologyDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
-                    TechnologiesConstants.MODEL_TECHNOLOGY);
-            return technologyDD
-                    .find()
-                    .add(SearchRestrictions.belongsTo("product", BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT,
-                            productComponent.getIntegerField("productId").longValue()))
-                    .add(SearchRestrictions.eq(TechnologyFields.MASTER, true)).setMaxResults(1).uniqueResult();
+            return materialComponentsCache.masterTechnologies.computeIfAbsent(productId, id -> {
+                DataDefinition technologyDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER,
+                        TechnologiesConstants.MODEL_TECHNOLOGY);
+                return Optional.ofNullable(technologyDD
+                        .find()
+                        .add(SearchRestrictions.belongsTo("product", BasicConstants.PLUGIN_IDENTIFIER,
+                                BasicConstants.MODEL_PRODUCT, id))
+                        .add(SearchRestrictions.eq(TechnologyFields.MASTER, true)).setMaxResults(1).uniqueResult());
+            }).orElse(null);
         }
     }
 
@@ -463,4 +482,16 @@ public class WorkPlanPdfForDivision {
         return sorted;
     }
 
+    private static class MaterialComponentsCache {
+
+        private final Map<Long, Map<Long, Optional<Entity>>> ordersProductsTechnologies = new HashMap<>();
+
+        private final Map<Long, Optional<Entity>> masterTechnologies = new HashMap<>();
+
+        private final Map<Long, Set<String>> technologiesMaterialNames = new HashMap<>();
+
+        private final Map<Long, Entity> products = new HashMap<>();
+
+    }
+
 }